@@ -2,6 +2,16 @@ package com.rodusek.graphingcalculator;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
 
 /**
  * This class is a persistent model used for interprocess communication between multiple JFrames. 
@@ -9,9 +19,23 @@ import java.beans.PropertyChangeSupport;
  * between frames. 
  * <p>This is where the bulk of the calculations are done for the y-axis values, as well as determining
  * the maximum values.</p>
+ * <p>The coordinates are calculated by jobs on a background executor so that the Event Dispatch Thread
+ * is never blocked. Each job is tagged with a generation number; requesting new coordinates cancels
+ * any stale job, and the last completed result stays visible until the new one is published.</p>
+ * <p>Every change to a requested value that affects the samples bumps a version number, and each
+ * function remembers the version it was last sampled at. Only the visible functions that are out of
+ * date are sampled again, so repainting or toggling a function that is already current never
+ * evaluates the polynomial.</p>
+ * <p>In adaptive mode the functions are sampled every few pixels, then each interval is subdivided
+ * while its chord strays from the curve by more than a fraction of a pixel, so each function has
+ * its own variable-length x-coordinates.</p>
+ * <p>In progressive mode, exact sampling first publishes every 16th point, then fills in the points
+ * between them in passes of every 8th, 4th, 2nd and finally every point, so that expensive
+ * polynomials are drawn coarsely long before they are complete.
+ * Apart from {@link #submit(Runnable)}, the model must only be used from the Event Dispatch Thread.</p>
  * 
  * @author Matthew Rodusek
- * @version 1.0, 2013-11-27
+ * @version 1.1, 2013-11-27
  */
 public class CalculatorModel {
     
@@ -19,6 +43,11 @@ public class CalculatorModel {
     public static final String START_CHANGE = "Plot Start Changed";
     public static final String END_CHANGE   = "Plot End Changed";
     public static final String VISIBILITY_CHANGE = "Visibility changed";
+    public static final String PRECISION_CHANGE  = "Precision changed";
+    public static final String SAMPLING_CHANGE   = "Sampling changed";
+    public static final String SAMPLING_MODE_CHANGE = "Sampling mode changed";
+    public static final String PROGRESS_CHANGE      = "Sampling progressed";
+    public static final String RENDERING_CHANGE     = "Rendering changed";
     
     // Static keys used for values
     public static final int KEY_POLYNOMIAL = 0;
@@ -28,13 +57,59 @@ public class CalculatorModel {
     public static final int KEY_REAL = 0;
     public static final int KEY_IMAGINARY = 1;
     
-    // Polynomial information
-    private Poly[]      polynomial = new Poly[3];
+    private static final Rational TWO = new Rational(2);
+    
+    // Smallest number of points sampled as a separate fork/join task, found by benchmark
+    private static final int DOUBLE_GRAIN           = 256;
+    private static final int DOUBLE_GRAIN_WORK      = 1 << 14; // points times coefficients times derivatives
+    private static final int EXACT_GRAIN            = 256;
+    private static final int EXACT_GRAIN_PER_DEGREE = 16; // points per squared degree
+    
+    // Adaptive sampling
+    private static final int    ADAPTIVE_SPACING   = 8;   // pixels between the first, uniform samples
+    private static final int    ADAPTIVE_MIN       = 16;  // fewest intervals of the first samples
+    private static final int    ADAPTIVE_DEPTH     = 5;   // most times an interval is halved
+    private static final double ADAPTIVE_TOLERANCE = 0.5; // pixels a chord may stray from the curve
+    
+    // Progressive sampling
+    private static final int    PROGRESSIVE_STRIDE = 16;  // distance between the points of the first pass
+    
+    // Parse cache
+    private static final int    CACHE_SIZE         = 64;  // most parsed expressions to keep
+    
+    // Requested polynomial information
+    private Poly     poly       = null;
+    private PolyCache.Entry entry = null; // the cached derivatives of the polynomial, if it was parsed through the cache
     private Rational start      = new Rational("-4");
     private Rational end        = new Rational("4");
-    private double   y1[][]        = null; // 2D arrays holding real/imaginary values 
-    private double   y2[][]        = null; // index 0 is real
-    private double   y3[][]        = null; // index 1 is imaginary
+    private int         n            = 460;
+    private boolean  exact        = false; // whether to sample with exact Rational arithmetic
+    private boolean  parallel     = true;  // whether to split sampling across the cores
+    private boolean  adaptive     = false; // whether to subdivide where the curves bend
+    private boolean  progressive  = true;  // whether to publish coarse passes of exact sampling
+    private int      height       = 460;   // height of the plot in pixels, for the adaptive tolerance
+    private int      width        = 460;   // width of the plot in pixels
+    private int      oversampling = 1;     // samples per pixel column, reduced again when plotted
+    private boolean  software     = false; // whether to draw the curves with the Wu line renderer
+    
+    // Plotted polynomial information, from the last completed sampling job
+    private Poly[]      polynomial = new Poly[3];
+    private String[]    labels     = new String[3]; // the text of each plotted polynomial, built with its samples
+    private CompiledPoly compiled  = null; // double-precision copy of the polynomial for plotting
+    private Rational plotStart  = null;
+    private Rational plotEnd    = null;
+    private double   y[][][]       = new double[3][][]; // 2D arrays holding real/imaginary values for each function
+                                                     // index 0 is real, index 1 is imaginary
+    private double   x[][]         = new double[3][]; // x-coordinates of each function
+    
+    // Back buffers written by the sampling job, swapped with the plotted ones when it completes
+    private double   back[][][]    = new double[3][][];
+    
+    // Dirty tracking
+    private long     version        = 0;            // bumped whenever a requested value affecting the samples changes
+    private long     sampled[]      = {-1, -1, -1}; // the version each function was last sampled at
+    private long     pendingVersion = -1;           // the version being sampled in the background
+    private boolean  pending[]      = new boolean[3]; // the functions being sampled in the background
     
     // Boundaries
     private double   yMax        = 0;
@@ -42,15 +117,708 @@ public class CalculatorModel {
     private double   xMax        =  4.0;
     private double     xMin        = -4.0;
     
-    private int         n            = 460;
-    
     // Boolean for the 4 display possibilities
     private boolean display[]    = {true,true,true,true}; // f(x), f'(x), f''(x), imaginary
     
+    // Background sampling
+    private final ExecutorService executor   = Executors.newSingleThreadExecutor(new DaemonThreadFactory("Polynomial Sampler"));
+    private final ExecutorService parser     = Executors.newSingleThreadExecutor(new DaemonThreadFactory("Polynomial Parser"));
+    private final AtomicLong      generation = new AtomicLong();
+    private final PolyCache       cache      = new PolyCache(CACHE_SIZE);
+    private boolean               computing  = false;
+    private int                   stride     = 1; // distance between the plotted points of a progressive pass
+    
     private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
     
     // ---------------------------------------------------------------------------------
     
+    /**
+     * Creates the daemon threads that run the sampling jobs and the parse tasks, so that they
+     * don't keep the application alive.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        
+        private final String name;
+        
+        /**
+         * @param name the name of the threads
+         */
+        public DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+        
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, this.name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    /**
+     * Background job that derives, compiles and samples the out of date functions into the back
+     * buffers. The job stops early once a newer job has been requested, and only publishes its
+     * result if it is still the latest job.
+     */
+    private class SampleJob implements Runnable {
+    
+        private final long         generation;
+        private final long         version;
+        private final boolean[]    mask;
+        private final int          derivatives; // the highest derivative to sample
+        private final Poly         poly;
+        private final PolyCache.Entry entry; // the cached derivatives of the polynomial, or null
+        private final Rational     start;
+        private final Rational     end;
+        private final int          n;
+        private final boolean      exact;
+        private final boolean      parallel;
+        private final boolean      adaptive;
+        private final boolean      progressive;
+        private final int          height;
+        private final Poly[]       polynomial;
+        private final String[]     labels;
+        private       CompiledPoly compiled;
+        private final double[][][] y;
+        private       double[]     x;
+        private       double       tolerance; // largest distance between a chord and the curve
+        private       double[]     mx;        // x-coordinates of the middle of each interval
+        private       double[][][] my;        // values at the middle of each interval
+        private       double[][][] refined;   // points added within each interval, by interval
+        private       Rational     h;  // exact distance between points
+        private       int          passFirst; // index of the first point of the current progressive pass
+        private       int          passStep;  // distance between the points of the current progressive pass
+        private       double       dx; // distance between points in double precision
+    
+        // ---------------------------------------------------------------------------------
+    
+        /**
+         * Captures the requested state of the model. This must be called on the Event Dispatch Thread.
+         * @param generation the generation number of this job
+         * @param mask which functions to sample, by function key
+         */
+        public SampleJob(final long generation, final boolean[] mask) {
+            final CalculatorModel model = CalculatorModel.this;
+            this.generation = generation;
+            this.version    = model.version;
+            this.mask       = mask;
+            this.poly       = model.poly;
+            this.entry      = model.entry != null && model.entry.getPoly(KEY_POLYNOMIAL)==model.poly ? model.entry : null;
+            this.start      = model.start;
+            this.end        = model.end;
+            this.exact      = model.exact;
+            this.parallel   = model.parallel;
+            this.adaptive   = model.adaptive;
+            this.progressive = model.progressive && model.exact && !model.adaptive;
+            this.height     = model.height;
+            // Adaptive sampling starts from a few uniform samples, and refines them
+            this.n          = this.adaptive ? Math.max(ADAPTIVE_MIN, model.n / ADAPTIVE_SPACING) : model.n;
+    
+            // Reuse the derivatives if the polynomial hasn't changed
+            if(model.polynomial[KEY_POLYNOMIAL]==model.poly) {
+                this.polynomial = model.polynomial;
+                this.labels     = model.labels;
+                this.compiled   = model.compiled;
+            }else {
+                this.polynomial = new Poly[3];
+                this.labels     = new String[3];
+            }
+    
+            // Reuse the back buffers unless the number of points changed. Functions that aren't
+            // sampled are left without an output array
+            int derivatives = 0;
+            this.y = new double[3][][];
+            for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+                if(!mask[key]) continue;
+                if(model.back[key]==null || model.back[key][KEY_REAL].length!=this.n+1) {
+                    model.back[key] = new double[2][this.n+1];
+                }
+                this.y[key] = model.back[key];
+                derivatives = key;
+            }
+            this.x = new double[n+1];
+            this.derivatives = derivatives;
+        }
+    
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            if(this.compute()) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        SampleJob.this.publish();
+                    }
+                });
+            }
+        }
+    
+        /**
+         * Returns whether a newer job has been requested since this one
+         * @return true if this job is stale
+         */
+        private boolean isCancelled() {
+            return this.generation!=CalculatorModel.this.generation.get();
+        }
+    
+        /**
+         * Derives the polynomial and calculates the coordinates into the back buffers
+         * @return true if the job completed, false if it was cancelled
+         */
+        private boolean compute() {
+            if(this.isCancelled()) return false;
+            if(this.polynomial[KEY_POLYNOMIAL]==null && this.entry!=null) {
+                // Derivatives of an expression that was parsed before are only taken once
+                for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+                    this.polynomial[key] = this.entry.getPoly(key);
+                }
+                this.compiled = this.entry.getCompiled();
+            }else if(this.polynomial[KEY_POLYNOMIAL]==null) {
+                this.polynomial[KEY_POLYNOMIAL]        = this.poly;
+                this.polynomial[KEY_FIRST_DERIVATIVE]  = this.poly.diff();
+                this.polynomial[KEY_SECOND_DERIVATIVE] = this.polynomial[KEY_FIRST_DERIVATIVE].diff();
+                this.compiled = this.poly.compileDouble();
+            }
+            // Printing a lazy polynomial expands it, so the text is built here rather than when painting
+            if(this.labels[KEY_POLYNOMIAL]==null) {
+                for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+                    this.labels[key] = this.polynomial[key].toString();
+                }
+                if(this.isCancelled()) return false;
+            }
+            this.h  = this.end.sub(this.start).div(new Rational(this.n));
+            this.dx = (this.end.doubleValue() - this.start.doubleValue()) / this.n;
+    
+            if(this.progressive) {
+                return this.sampleProgressive();
+            }
+            // Every point is independent, so large jobs are split across the cores
+            final int grain = this.grain();
+            if(this.parallel && this.n+1 > grain) {
+                ForkJoinPool.commonPool().invoke(new SampleTask(0, this.n+1, grain, SampleTask.SAMPLE));
+                if(this.isCancelled()) return false;
+            }else if(!this.sample(0, this.n+1, false)) {
+                return false;
+            }
+            return !this.adaptive || this.refine();
+        }
+    
+        /**
+         * Samples exactly in passes from coarse to fine, publishing each pass but the last as
+         * it completes. Each pass only calculates the points between those of the previous pass,
+         * stepping through them with a copy of the same difference table at a larger distance,
+         * so no point is calculated twice and only one table is seeded.
+         * @return true if the job completed, false if it was cancelled
+         */
+        private boolean sampleProgressive() {
+            final double xMin = this.start.doubleValue();
+            for(int i=0;i<=this.n;i++) {
+                this.x[i] = xMin + i*this.dx;
+            }
+            final Poly p = this.poly;
+            // Too few points to make seeding a difference table worthwhile, or a sparse
+            // polynomial whose terms are cheaper to evaluate than a table of its degree
+            final ForwardDifference table = this.n < p.getDegree() || p.isSparse() ? null
+                : new ForwardDifference(p, this.derivatives, this.start, this.h, this.parallel);
+            final double[][][] out = this.outputs(this.y);
+    
+            for(int stride = PROGRESSIVE_STRIDE; stride >= 1; stride /= 2) {
+                // The first pass samples every multiple of the stride, and later passes the odd ones
+                final int first = stride==PROGRESSIVE_STRIDE ? 0 : stride;
+                final int step  = stride==PROGRESSIVE_STRIDE ? stride : 2*stride;
+                if(table==null) {
+                    if(!this.samplePass(first, step)) return false;
+                }else {
+                    final ForwardDifference fd = new ForwardDifference(table);
+                    for(int i=0;i<first;i++) {
+                        fd.step();
+                    }
+                    for(int i=1;i<step;i*=2) {
+                        fd.doubleStep();
+                    }
+                    for(int i=first;i<=this.n;i+=step) {
+                        if(this.isCancelled()) return false;
+                        fd.next(i, out);
+                    }
+                }
+                // The coarse passes also reach the end of the interval, so they span the whole plot
+                if(stride==PROGRESSIVE_STRIDE && this.n%stride!=0) {
+                    if(!this.calculateExactCoordinates(this.start, this.y, this.n, this.n+1)) return false;
+                }
+                if(stride > 1) {
+                    this.publishPass(stride);
+                }
+            }
+            return true;
+        }
+    
+        /**
+         * Samples every <code>step</code>-th point from <code>first</code> of a progressive pass
+         * without a difference table, where every point is its own Horner evaluation. Like the
+         * other stages, the points are split across the cores if the job is parallel.
+         * @param first the index of the first point of the pass
+         * @param step the distance between the points of the pass
+         * @return true if the points were calculated, false if the job was cancelled
+         */
+        private boolean samplePass(final int first, final int step) {
+            if(first > this.n) return true;
+            final int count = (this.n - first) / step + 1;
+            this.passFirst = first;
+            this.passStep  = step;
+            final int grain = this.grain();
+            if(this.parallel && count > grain) {
+                ForkJoinPool.commonPool().invoke(new SampleTask(0, count, grain, SampleTask.SAMPLE_PASS));
+                return !this.isCancelled();
+            }
+            return this.samplePassRange(0, count);
+        }
+    
+        /**
+         * Samples the points of the current progressive pass with indices <code>from</code>
+         * (inclusive) to <code>to</code> (exclusive) within the pass.
+         * @param from the index within the pass of the first point
+         * @param to the index within the pass after the last point
+         * @return true if the points were calculated, false if the job was cancelled
+         */
+        private boolean samplePassRange(final int from, final int to) {
+            for(int j=from;j<to;j++) {
+                final int i = this.passFirst + j*this.passStep;
+                if(!this.calculateExactCoordinates(this.start, this.y, i, i+1)) return false;
+            }
+            return true;
+        }
+    
+        /**
+         * Publishes a copy of every point calculated so far, which are the multiples of
+         * <code>stride</code> and the last point.
+         * @param stride the distance between the points of the pass
+         */
+        private void publishPass(final int stride) {
+            final int size = this.n/stride + (this.n%stride==0 ? 1 : 2);
+            final double[]     x = new double[size];
+            final double[][][] y = new double[3][][];
+            for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                if(this.mask[key]) y[key] = new double[2][size];
+            }
+            for(int j=0;j<size;j++) {
+                final int i = Math.min(j*stride, this.n);
+                x[j] = this.x[i];
+                for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                    if(!this.mask[key]) continue;
+                    y[key][KEY_REAL][j]      = this.y[key][KEY_REAL][i];
+                    y[key][KEY_IMAGINARY][j] = this.y[key][KEY_IMAGINARY][i];
+                }
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if(SampleJob.this.isCancelled()) return;
+                    final CalculatorModel model = CalculatorModel.this;
+                    for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+                        if(!SampleJob.this.mask[key]) continue;
+                        model.y[key] = y[key];
+                        model.x[key] = x;
+                    }
+                    model.stride = stride;
+                    SampleJob.this.publishState();
+                    // Inform listeners the model is updated.
+                    model.pcs.firePropertyChange(PROGRESS_CHANGE, null, stride);
+                }
+            });
+        }
+    
+        /**
+         * Subdivides the intervals between the uniform samples where the functions bend, then
+         * merges the points added within each interval with the uniform samples.
+         * @return true if the job completed, false if it was cancelled
+         */
+        private boolean refine() {
+            // The tolerance is a fraction of a pixel, in the scale of the sampled functions
+            double yMax = -Double.MAX_VALUE;
+            double yMin = Double.MAX_VALUE;
+            for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                if(!this.mask[key]) continue;
+                yMax = Math.max(yMax, Tools.max(this.y[key][KEY_REAL],this.y[key][KEY_IMAGINARY]));
+                yMin = Math.min(yMin, Tools.min(this.y[key][KEY_REAL],this.y[key][KEY_IMAGINARY]));
+            }
+            this.tolerance = ADAPTIVE_TOLERANCE * (yMax - yMin) / this.height;
+            // Straight lines, and functions that overflowed, are left as they are
+            if(!(this.tolerance > 0) || Double.isInfinite(this.tolerance)) return true;
+    
+            // Every interval is halved at least once, so the middles are sampled uniformly too
+            this.mx = new double[this.n];
+            this.my = new double[3][][];
+            for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                if(this.mask[key]) this.my[key] = new double[2][this.n];
+            }
+            int grain = this.grain();
+            if(this.parallel && this.n > grain) {
+                ForkJoinPool.commonPool().invoke(new SampleTask(0, this.n, grain, SampleTask.SAMPLE_MIDDLES));
+                if(this.isCancelled()) return false;
+            }else if(!this.sample(0, this.n, true)) {
+                return false;
+            }
+    
+            this.refined = new double[this.n][][];
+            grain = this.exact ? 1 : Math.max(1, grain / ADAPTIVE_SPACING);
+            if(this.parallel && this.n > grain) {
+                ForkJoinPool.commonPool().invoke(new SampleTask(0, this.n, grain, SampleTask.REFINE));
+                if(this.isCancelled()) return false;
+            }else if(!this.refine(0, this.n)) {
+                return false;
+            }
+    
+            // Merge the points in order of x
+            int size = this.n+1;
+            for(int i=0;i<this.n;i++) {
+                size += this.refined[i].length;
+            }
+            final double[]     x = new double[size];
+            final double[][][] y = new double[3][][];
+            for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                if(this.mask[key]) y[key] = new double[2][size];
+            }
+            int j = 0;
+            for(int i=0;i<=this.n;i++) {
+                x[j] = this.x[i];
+                for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                    if(!this.mask[key]) continue;
+                    y[key][KEY_REAL][j]      = this.y[key][KEY_REAL][i];
+                    y[key][KEY_IMAGINARY][j] = this.y[key][KEY_IMAGINARY][i];
+                }
+                j++;
+                if(i==this.n) break;
+                // Each refined point holds x, followed by the real and imaginary values of each function
+                for(double[] point : this.refined[i]) {
+                    x[j] = point[0];
+                    for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                        if(!this.mask[key]) continue;
+                        y[key][KEY_REAL][j]      = point[1+2*key];
+                        y[key][KEY_IMAGINARY][j] = point[2+2*key];
+                    }
+                    j++;
+                }
+            }
+            this.x = x;
+            System.arraycopy(y, 0, this.y, 0, y.length);
+            return true;
+        }
+    
+        /**
+         * Refines the intervals with indices <code>from</code> (inclusive) to <code>to</code>
+         * (exclusive), storing the points added within each interval in <code>refined</code>.
+         * @param from the index of the first interval
+         * @param to the index after the last interval
+         * @return true if the intervals were refined, false if the job was cancelled
+         */
+        private boolean refine(final int from, final int to) {
+            final List<double[]> points = new ArrayList<double[]>();
+            for(int i=from;i<to;i++) {
+                if(this.isCancelled()) return false;
+                final Rational a = this.exact ? this.start.add(this.h.mul(new Rational(i))) : null;
+                final Rational m = this.exact ? a.add(this.h.div(TWO)) : null;
+                points.clear();
+                this.subdivide(points, a, this.point(this.x, this.y, i), this.exact ? a.add(this.h) : null,
+                               this.point(this.x, this.y, i+1), m, this.point(this.mx, this.my, i), 0);
+                this.refined[i] = points.toArray(new double[points.size()][]);
+            }
+            return true;
+        }
+    
+        /**
+         * Evaluates the functions at the middle of an interval, then subdivides it.
+         * @param points the list to add the points to, in order of x
+         * @param a the exact start of the interval, in exact mode
+         * @param pa the point at the start of the interval
+         * @param b the exact end of the interval, in exact mode
+         * @param pb the point at the end of the interval
+         * @param depth the number of times the interval has been halved
+         */
+        private void subdivide(final List<double[]> points, final Rational a, final double[] pa,
+                               final Rational b, final double[] pb, final int depth) {
+            final Rational m = this.exact ? a.add(b).div(TWO) : null;
+            this.subdivide(points, a, pa, b, pb, m, this.evaluate(m, (pa[0] + pb[0]) / 2), depth);
+        }
+    
+        /**
+         * Adds the middle point of an interval, and subdivides the halves in turn if the chord
+         * between the ends of the interval strays from it, until their chords are within the
+         * tolerance or the depth limit is reached.
+         * @param points the list to add the points to, in order of x
+         * @param a the exact start of the interval, in exact mode
+         * @param pa the point at the start of the interval
+         * @param b the exact end of the interval, in exact mode
+         * @param pb the point at the end of the interval
+         * @param m the exact middle of the interval, in exact mode
+         * @param pm the point at the middle of the interval
+         * @param depth the number of times the interval has been halved
+         */
+        private void subdivide(final List<double[]> points, final Rational a, final double[] pa,
+                               final Rational b, final double[] pb, final Rational m, final double[] pm,
+                               final int depth) {
+            boolean straight = true;
+            for(int i=1;i<pm.length && straight;i++) {
+                straight = Math.abs(pm[i] - (pa[i] + pb[i]) / 2) <= this.tolerance;
+            }
+            if(straight || depth+1 == ADAPTIVE_DEPTH) {
+                points.add(pm);
+                return;
+            }
+            this.subdivide(points, a, pa, m, pm, depth+1);
+            points.add(pm);
+            this.subdivide(points, m, pm, b, pb, depth+1);
+        }
+    
+        /**
+         * Returns the uniform sample with index <code>i</code> as a point holding x, followed by
+         * the real and imaginary values of each function. Unsampled functions are left as 0.
+         * @param x the x-coordinates of the samples
+         * @param y the values of the samples, by function key
+         * @param i the index of the sample
+         * @return the point
+         */
+        private double[] point(final double[] x, final double[][][] y, final int i) {
+            final double[] point = new double[2*this.derivatives+3];
+            point[0] = x[i];
+            for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                if(!this.mask[key]) continue;
+                point[1+2*key] = y[key][KEY_REAL][i];
+                point[2+2*key] = y[key][KEY_IMAGINARY][i];
+            }
+            return point;
+        }
+    
+        /**
+         * Evaluates the functions at a single point, exactly at <code>exactX</code> in exact mode
+         * or at <code>x</code> otherwise.
+         * @param exactX the exact point to evaluate at, in exact mode
+         * @param x the point to evaluate at
+         * @return the point holding x, followed by the real and imaginary values of each function
+         */
+        private double[] evaluate(final Rational exactX, final double x) {
+            final double[] point = new double[2*this.derivatives+3];
+            point[0] = x;
+            if(this.exact) {
+                final Complex[] v = this.poly.evalAt(new Complex(exactX), this.derivatives);
+                for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                    if(!this.mask[key]) continue;
+                    point[1+2*key] = v[key].getReal().doubleValue();
+                    point[2+2*key] = v[key].getImaginary().doubleValue();
+                }
+            }else {
+                final double[][] v = new double[this.derivatives+1][2];
+                this.compiled.eval(x, v);
+                for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                    if(!this.mask[key]) continue;
+                    point[1+2*key] = v[key][KEY_REAL];
+                    point[2+2*key] = v[key][KEY_IMAGINARY];
+                }
+            }
+            return point;
+        }
+    
+        /**
+         * Returns the largest number of points sampled without splitting into separate tasks.
+         * Exact chunks seed their own difference tables with d+1 Horner evaluations, which cost
+         * about (d+1)<sup>2</sup> times as much as a step as the coefficients grow with the degree d,
+         * so chunks must be long before splitting pays off. With fewer points than the degree,
+         * or a sparse polynomial, every point is its own Horner evaluation.
+         * @return the number of points
+         */
+        private int grain() {
+            if(this.exact) {
+                final int deg = this.poly.getDegree();
+                if(this.n < deg || this.poly.isSparse()) return 1;
+                return Math.max(EXACT_GRAIN, EXACT_GRAIN_PER_DEGREE*(deg+1)*(deg+1));
+            }
+            final int terms = this.compiled.getTerms();
+            return Math.max(DOUBLE_GRAIN, DOUBLE_GRAIN_WORK/(terms*(this.derivatives+1)));
+        }
+    
+        /**
+         * Calculates the x-coordinates, and the polynomial and its derivatives at the points
+         * with indices <code>from</code> (inclusive) to <code>to</code> (exclusive), storing both
+         * the real and complex portions into the y arrays of the functions being sampled.
+         * The polynomial and the derivatives are evaluated together in one pass.
+         * @param from the index of the first point
+         * @param to the index after the last point
+         * @param middles true to sample the middles of the intervals instead of their starts
+         * @return true if the points were calculated, false if the job was cancelled
+         */
+        private boolean sample(final int from, final int to, final boolean middles) {
+            if(this.isCancelled()) return false;
+            final double[]     x = middles ? this.mx : this.x;
+            final double[][][] y = middles ? this.my : this.y;
+            // x-coordinates are used by the double precision sampling
+            final double xMin = this.start.doubleValue() + (middles ? this.dx/2 : 0);
+            for(int i=from;i<to;i++) {
+                x[i] = xMin + i*this.dx;
+            }
+            if(this.exact) {
+                final Rational first = middles ? this.start.add(this.h.div(TWO)) : this.start;
+                return this.calculateExactCoordinates(first, y, from, to);
+            }
+            this.compiled.eval(x, from, to, this.outputs(y));
+            return true;
+        }
+    
+        /**
+         * Calculates the polynomial and its derivatives exactly at the points with indices
+         * <code>from</code> (inclusive) to <code>to</code> (exclusive) of the evenly spaced points
+         * starting at <code>first</code>.
+         * @param first the point with index 0
+         * @param y the arrays to store the values in, by function key
+         * @param from the index of the first point
+         * @param to the index after the last point
+         * @return true if the points were calculated, false if the job was cancelled
+         */
+        private boolean calculateExactCoordinates(final Rational first, final double[][][] y,
+                                                  final int from, final int to) {
+            final Poly p = this.poly;
+            // Each range starts from its own exact first point, rather than accumulating
+            Rational x = first.add(this.h.mul(new Rational(from)));
+            // Too few points to make seeding a difference table worthwhile, or a sparse
+            // polynomial whose terms are cheaper to evaluate than a table of its degree
+            if(to-from <= p.getDegree() || p.isSparse()) {
+                for(int i=from;i<to;i++) {
+                    if(this.isCancelled()) return false;
+                    Complex[] v = p.evalAt(new Complex(x), this.derivatives);
+                    for(int key = KEY_POLYNOMIAL; key <= this.derivatives; key++) {
+                        if(!this.mask[key]) continue;
+                        y[key][KEY_REAL][i]      = v[key].getReal().doubleValue();
+                        y[key][KEY_IMAGINARY][i] = v[key].getImaginary().doubleValue();
+                    }
+                    x = x.add(this.h);
+                }
+            }else {
+                final double[][][] out = this.outputs(y);
+                ForwardDifference fd = new ForwardDifference(p, this.derivatives, x, this.h, this.parallel);
+                for(int i=from;i<to;i++) {
+                    if(this.isCancelled()) return false;
+                    fd.next(i, out);
+                }
+            }
+            return true;
+        }
+    
+        /**
+         * Fork/join task that samples a range of points, or refines a range of intervals,
+         * splitting it in half until the ranges are no longer than the grain.
+         */
+        private class SampleTask extends RecursiveAction {
+    
+            private static final long serialVersionUID = 1L;
+    
+            public static final int SAMPLE         = 0; // sample the points
+            public static final int SAMPLE_MIDDLES = 1; // sample the middles of the intervals
+            public static final int REFINE         = 2; // refine the intervals
+            public static final int SAMPLE_PASS    = 3; // sample the points of a progressive pass
+    
+            private final int from;
+            private final int to;
+            private final int grain;
+            private final int stage;
+    
+            /**
+             * @param from the index of the first point or interval
+             * @param to the index after the last point or interval
+             * @param grain the largest range handled without splitting
+             * @param stage which stage of sampling to perform
+             */
+            public SampleTask(final int from, final int to, final int grain, final int stage) {
+                this.from  = from;
+                this.to    = to;
+                this.grain = grain;
+                this.stage = stage;
+            }
+    
+            /*
+             * (non-Javadoc)
+             * @see java.util.concurrent.RecursiveAction#compute()
+             */
+            @Override
+            protected void compute() {
+                if(this.to-this.from <= this.grain || SampleJob.this.isCancelled()) {
+                    if(this.stage==REFINE) {
+                        SampleJob.this.refine(this.from, this.to);
+                    }else if(this.stage==SAMPLE_PASS) {
+                        SampleJob.this.samplePassRange(this.from, this.to);
+                    }else {
+                        SampleJob.this.sample(this.from, this.to, this.stage==SAMPLE_MIDDLES);
+                    }
+                    return;
+                }
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(new SampleTask(this.from, mid, this.grain, this.stage),
+                          new SampleTask(mid, this.to, this.grain, this.stage));
+            }
+        }
+    
+        /**
+         * Returns the output arrays up to the highest derivative being sampled; the functions
+         * in between that aren't sampled have no output array.
+         * @param y the arrays of every function, by function key
+         * @return the output arrays, by function key
+         */
+        private double[][][] outputs(final double[][][] y) {
+            final double[][][] out = new double[this.derivatives+1][][];
+            System.arraycopy(y, 0, out, 0, out.length);
+            return out;
+        }
+    
+        /**
+         * Swaps the back buffers in as the plotted coordinates, if this is still the latest job.
+         * This must be called on the Event Dispatch Thread. The one exception is the constructor
+         * of the model, which publishes its first job on the thread that builds it, before the
+         * model can be seen by any other thread or listener.
+         */
+        private void publish() {
+            if(this.isCancelled()) return;
+            final CalculatorModel model = CalculatorModel.this;
+    
+            for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+                if(!this.mask[key]) continue;
+                model.back[key]    = model.y[key];
+                model.y[key]       = this.y[key];
+                model.x[key]       = this.x;
+                model.sampled[key] = this.version;
+            }
+            model.computing  = false;
+            model.stride     = 1;
+            model.pendingVersion = -1;
+            model.pending    = new boolean[3];
+            this.publishState();
+    
+            // Inform listeners the model is updated.
+            model.pcs.firePropertyChange(SAMPLING_CHANGE, null, false);
+        }
+    
+        /**
+         * Sets the plotted polynomials and interval to those of this job, and recalculates the
+         * Y-boundaries. This must be called on the Event Dispatch Thread.
+         */
+        private void publishState() {
+            final CalculatorModel model = CalculatorModel.this;
+            model.polynomial = this.polynomial;
+            model.labels     = this.labels;
+            model.compiled   = this.compiled;
+            model.plotStart  = this.start;
+            model.plotEnd    = this.end;
+            model.xMin       = this.start.doubleValue();
+            model.xMax       = this.end.doubleValue();
+            model.calculateYBounds();
+        }
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
     /**
      * Attaches listeners to the model.
      * 
@@ -76,32 +844,47 @@ public class CalculatorModel {
     /**
      * this constructor initializes the default polynomial/graph information to represent the polynomial
      * "x^4-4*x^3+8*x", with a range of between -2 and 4.
+     * <p>The model may be built on any thread. Its first coordinates are calculated and published
+     * on that thread, since nothing else can see the model yet; from then on it must only be used
+     * from the Event Dispatch Thread.</p>
      */
     public CalculatorModel() {
         // Initialize the model with the first polynomial
-        this.polynomial[KEY_POLYNOMIAL]        = new Poly("(x+3*i)^3", "x");
-        this.polynomial[KEY_FIRST_DERIVATIVE]  = polynomial[KEY_POLYNOMIAL].diff();
-        this.polynomial[KEY_SECOND_DERIVATIVE] = polynomial[KEY_FIRST_DERIVATIVE].diff();
+        this.poly = new Poly("(x+3*i)^3", "x");
         
-        this.y1 = this.getPolynomialCoordinates(this.polynomial[KEY_POLYNOMIAL]);
-        this.y2 = this.getPolynomialCoordinates(this.polynomial[KEY_FIRST_DERIVATIVE]);
-        this.y3 = this.getPolynomialCoordinates(this.polynomial[KEY_SECOND_DERIVATIVE]);
-        
-        this.xMax = end.eval().doubleValue();
-        this.xMin = start.eval().doubleValue();
-        this.calculateYBounds();
+        // The first coordinates are calculated immediately, so there is always a result to plot.
+        // They are published here rather than on the Event Dispatch Thread, as no listener is attached yet
+        final SampleJob job = new SampleJob(this.generation.get(), this.display.clone());
+        job.compute();
+        job.publish();
     }
     
     // ---------------------------------------------------------------------------------
     
     /**
-     * Sets the polynomial to be evaluated
+     * Sets the polynomial to be evaluated from an entry of the parse cache, whose derivatives
+     * are reused rather than taken again. The plotted polynomial is replaced once
+     * {@link #calculatePolynomialCoordinates()} completes.
+     * @param entry the cached entry of the new polynomial to plot
+     */
+    public void setPoly(final PolyCache.Entry entry) {
+        this.entry = entry;
+        this.setPoly(entry.getPoly(KEY_POLYNOMIAL));
+    }
+    
+    /**
+     * Sets the polynomial to be evaluated. The plotted polynomial is replaced once
+     * {@link #calculatePolynomialCoordinates()} completes.
      * @param polynomial the new polynomial to plot
      */
     public void setPoly(final Poly polynomial) {
-        this.polynomial[KEY_POLYNOMIAL]        = polynomial;
-        this.polynomial[KEY_FIRST_DERIVATIVE]  = this.polynomial[KEY_POLYNOMIAL].diff();
-        this.polynomial[KEY_SECOND_DERIVATIVE] = this.polynomial[KEY_FIRST_DERIVATIVE].diff();
+        // An equal polynomial in the same variable has the same samples and derivatives. Only
+        // polynomials that compare without being expanded are checked, since this is on the
+        // Event Dispatch Thread; any others are sampled again
+        if(!polynomial.isKnownEqual(this.poly) || !polynomial.getVariable().equals(this.poly.getVariable())) {
+            this.poly = polynomial;
+            this.version++;
+        }
         // Inform listeners the model is updated.
         this.pcs.firePropertyChange(POLY_CHANGE, null, polynomial);
     }
@@ -112,8 +895,10 @@ public class CalculatorModel {
      * @param start the new starting value of the evaluation
      */
     public void setStart(final Rational start) {
-        this.start = start;
-        this.xMin  = start.eval().doubleValue();
+        if(!start.equals(this.start)) {
+            this.start = start;
+            this.version++;
+        }
         // Inform listeners the model is updated.
         this.pcs.firePropertyChange(START_CHANGE, null, start);
     }
@@ -124,8 +909,10 @@ public class CalculatorModel {
      * @param end the new ending value of the evaluation
      */
     public void setEnd(final Rational end) {
-        this.end  = end;
-        this.xMax = end.eval().doubleValue();
+        if(!end.equals(this.end)) {
+            this.end = end;
+            this.version++;
+        }
         // Inform listeners the model is updated.
         this.pcs.firePropertyChange(END_CHANGE, null, end);
     }
@@ -133,34 +920,170 @@ public class CalculatorModel {
     
     
     /**
-     * Sets the interval value 
+     * Sets the interval value, recalculating the coordinates if it changed
      * @param n the interval
      */
     public void setInterval(int n) {
+        if(this.n==n) return;
         this.n = n;
+        this.version++;
+        this.calculatePolynomialCoordinates();
+    }
+    
+    /**
+     * Sets the size of the plot in pixels. The width times the oversampling factor is the
+     * number of intervals sampled, and the height sets the tolerance of adaptive sampling.
+     * 
+     * @param width the width of the plot
+     * @param height the height of the plot
+     */
+    public void setViewport(int width, int height) {
+        if(this.height!=height) {
+            this.height = height;
+            if(this.adaptive) this.version++;
+        }
+        this.width = width;
+        if(this.n!=width*this.oversampling) {
+            this.n = width*this.oversampling;
+            this.version++;
+        }
+        this.calculatePolynomialCoordinates();
+    }
+    
+    /**
+     * Sets the number of samples taken for each pixel column of the plot. Oversampling
+     * catches spikes narrower than a pixel; the samples are reduced to at most four
+     * per column again when they are plotted.
+     * 
+     * @param oversampling the samples per pixel column
+     * @throws IllegalArgumentException if the factor isn't positive
+     */
+    public void setOversampling(int oversampling) throws IllegalArgumentException{
+        if(oversampling<1) throw new IllegalArgumentException();
+        if(this.oversampling==oversampling) return;
+        this.oversampling = oversampling;
+        this.n = this.width*oversampling;
+        this.version++;
+        this.calculatePolynomialCoordinates();
+    }
+    
+    /**
+     * Sets whether the polynomials are sampled adaptively, subdividing where they bend,
+     * rather than at every pixel.
+     * 
+     * @param adaptive true to sample adaptively, false to sample uniformly
+     */
+    public void setAdaptive(boolean adaptive) {
+        if(this.adaptive==adaptive) return;
+        this.adaptive = adaptive;
+        this.version++;
+        this.pcs.firePropertyChange(SAMPLING_MODE_CHANGE, null, adaptive);
+        this.calculatePolynomialCoordinates();
+    }
+    
+    /**
+     * Sets whether exact sampling publishes coarse passes before it completes. The samples
+     * are identical either way, so nothing is recalculated.
+     * 
+     * @param progressive true to publish coarse passes, false to only publish complete samples
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+    
+    /**
+     * Sets whether the curves are drawn straight into the pixels of an image with antialiased
+     * Wu lines, in parallel bands, rather than through <code>Graphics2D</code>. This is faster
+     * on the software Java2D pipeline. The samples are unaffected, so nothing is recalculated.
+     * 
+     * @param software true to draw with the Wu line renderer, false to draw with Graphics2D
+     */
+    public void setSoftwareRendering(boolean software) {
+        if(this.software==software) return;
+        this.software = software;
+        this.pcs.firePropertyChange(RENDERING_CHANGE, null, software);
+    }
+    
+    /**
+     * Sets whether the polynomials are sampled with exact <code>Rational</code> arithmetic.
+     * By default they are sampled in double precision, which is sufficient for plotting.
+     * 
+     * @param exact true to sample exactly, false to sample in double precision
+     */
+    public void setExact(boolean exact) {
+        if(this.exact==exact) return;
+        this.exact = exact;
+        this.version++;
+        this.pcs.firePropertyChange(PRECISION_CHANGE, null, exact);
+        this.calculatePolynomialCoordinates();
+    }
+    
+    /**
+     * Sets whether sampling is split across the available cores with a <code>ForkJoinPool</code>.
+     * The samples are identical either way, so nothing is recalculated.
+     * 
+     * @param parallel true to sample in parallel, false to sample on a single thread
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
     
     /**
      * Sets the visibility of the desired function plot. It fires a property change 
-     * to allow the GraphModel to recognize the change.
+     * to allow the GraphModel to recognize the change. A function that is shown again is
+     * only sampled if it is out of date.
      * 
      * @param key the integer key value between 0-3
      * @param value the boolean value to set it to
      */
     public void setVisibility(int key, boolean value) {
         this.display[key] = value;
+        if(value && key!=KEY_COMPLEX_VISIBLE) {
+            this.calculatePolynomialCoordinates();
+        }
         this.pcs.firePropertyChange(VISIBILITY_CHANGE, null, value);
     }
     
     // ---------------------------------------------------------------------------------
     
     /**
-     * Calculates the new polynomial Y-Coordinates and assigns it to the 3 y arrays
+     * Submits a task, such as parsing a new expression, to a background executor of its own.
+     * Tasks are run one at a time, in the order they are submitted. They don't wait behind the
+     * sampling job in progress, so a new expression is parsed while a stale job is still running,
+     * and requesting the coordinates of the new expression then cancels that job.
+     * 
+     * @param task the task to run in the background
+     */
+    public void submit(final Runnable task) {
+        this.parser.execute(task);
+    }
+    
+    /**
+     * Requests new Y-Coordinates in the background for the visible functions that are out of
+     * date, cancelling any calculation still in progress. Once complete, their y arrays and the
+     * Y-boundaries are replaced and listeners are informed. Nothing is calculated if every
+     * visible function is current, or is already being calculated.
      */
     public void calculatePolynomialCoordinates() {
-        this.y1 = this.getPolynomialCoordinates(polynomial[KEY_POLYNOMIAL]);
-        this.y2 = this.getPolynomialCoordinates(polynomial[KEY_FIRST_DERIVATIVE]);
-        this.y3 = this.getPolynomialCoordinates(polynomial[KEY_SECOND_DERIVATIVE]);
+        final boolean[] dirty = new boolean[3];
+        boolean stale = false;
+        for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+            dirty[key] = this.display[key] && this.sampled[key]!=this.version;
+            if(dirty[key] && !(this.pending[key] && this.pendingVersion==this.version)) {
+                stale = true;
+            }
+        }
+        if(!stale) return;
+        
+        // The new job replaces the one in progress, so it samples every out of date function
+        this.pendingVersion = this.version;
+        this.pending        = dirty;
+        this.executor.execute(new SampleJob(this.generation.incrementAndGet(), dirty));
+        if(!this.computing) {
+            this.computing = true;
+            // Inform listeners the model is updated.
+            this.pcs.firePropertyChange(SAMPLING_CHANGE, null, true);
+        }
     }
     
     /**
@@ -170,33 +1093,16 @@ public class CalculatorModel {
     public void calculateYBounds() {
         double yMax = -Double.MAX_VALUE;
         double yMin = Double.MAX_VALUE;
-        // If display imaginary
-        if(display[KEY_COMPLEX_VISIBLE]) {
-            if(display[KEY_POLYNOMIAL]) {
-                yMax = Math.max(yMax, Tools.max(y1[KEY_REAL],y1[KEY_IMAGINARY]));
-                yMin = Math.min(yMin, Tools.min(y1[KEY_REAL],y1[KEY_IMAGINARY]));
-            }
-            if(display[KEY_FIRST_DERIVATIVE]) {
-                yMax = Math.max(yMax, Tools.max(y2[KEY_REAL],y2[KEY_IMAGINARY]));
-                yMin = Math.min(yMin, Tools.min(y2[KEY_REAL],y2[KEY_IMAGINARY]));
-            }
-            if(display[KEY_SECOND_DERIVATIVE]) {
-                yMax = Math.max(yMax, Tools.max(y3[KEY_REAL],y3[KEY_IMAGINARY]));
-                yMin = Math.min(yMin, Tools.min(y3[KEY_REAL],y3[KEY_IMAGINARY]));
-            }
-        // Otherwise only calculate with reals
-        }else {
-            if(display[KEY_POLYNOMIAL]) {
-                yMax = Math.max(yMax, Tools.max(y1[KEY_REAL]));
-                yMin = Math.min(yMin, Tools.min(y1[KEY_REAL]));
-            }
-            if(display[KEY_FIRST_DERIVATIVE]) {
-                yMax = Math.max(yMax, Tools.max(y2[KEY_REAL]));
-                yMin = Math.min(yMin, Tools.min(y2[KEY_REAL]));
-            }
-            if(display[KEY_SECOND_DERIVATIVE]) {
-                yMax = Math.max(yMax, Tools.max(y3[KEY_REAL]));
-                yMin = Math.min(yMin, Tools.min(y3[KEY_REAL]));
+        for(int key = KEY_POLYNOMIAL; key <= KEY_SECOND_DERIVATIVE; key++) {
+            if(!display[key]) continue;
+            // If display imaginary
+            if(display[KEY_COMPLEX_VISIBLE]) {
+                yMax = Math.max(yMax, Tools.max(y[key][KEY_REAL],y[key][KEY_IMAGINARY]));
+                yMin = Math.min(yMin, Tools.min(y[key][KEY_REAL],y[key][KEY_IMAGINARY]));
+            // Otherwise only calculate with reals
+            }else {
+                yMax = Math.max(yMax, Tools.max(y[key][KEY_REAL]));
+                yMin = Math.min(yMin, Tools.min(y[key][KEY_REAL]));
             }
         }
         this.yMax = yMax;
@@ -215,21 +1121,41 @@ public class CalculatorModel {
     }
     
     /**
-     * Grabs and returns the starting evaluation point
+     * Returns the text of the polynomial that's plotted, or of one of its derivatives. It is
+     * built along with the coordinates, so a lazy polynomial isn't expanded to print it.
+     * 
+     * @param n the function key
+     * @return the text of the polynomial
+     */
+    public String getLabel(int n) {
+        return labels[n];
+    }
+    
+    /**
+     * Returns the cache of parsed expressions, which keeps their derivatives as well
+     * 
+     * @return the parse cache
+     */
+    public PolyCache getCache() {
+        return this.cache;
+    }
+    
+    /**
+     * Grabs and returns the starting evaluation point of the plotted coordinates
      * 
      * @return the starting evaluation point
      */
     public Rational getStart() {
-        return this.start;
+        return this.plotStart;
     }
     
     /**
-     * Grabs and returns the ending evaluation point
+     * Grabs and returns the ending evaluation point of the plotted coordinates
      * 
      * @return the ending evaluation point
      */
     public Rational getEnd() {
-        return this.end;
+        return this.plotEnd;
     }
     
     /**
@@ -260,6 +1186,79 @@ public class CalculatorModel {
      */
     public double getYMin() {return this.yMin;}
     
+    /**
+     * Gets whether the polynomials are sampled with exact arithmetic
+     * 
+     * @return true if sampling is exact, false if it is in double precision
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+    
+    /**
+     * Gets whether the polynomials are sampled adaptively
+     * 
+     * @return true if sampling is adaptive, false if it is uniform
+     */
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+    
+    /**
+     * Gets whether exact sampling publishes coarse passes before it completes
+     * 
+     * @return true if sampling is progressive, false otherwise
+     */
+    public boolean isProgressive() {
+        return this.progressive;
+    }
+    
+    /**
+     * Gets whether the curves are drawn with the Wu line renderer
+     * 
+     * @return true if the curves are drawn with the Wu line renderer, false if with Graphics2D
+     */
+    public boolean isSoftwareRendering() {
+        return this.software;
+    }
+    
+    /**
+     * Gets whether sampling is split across the available cores
+     * 
+     * @return true if sampling is parallel, false if it is on a single thread
+     */
+    public boolean isParallel() {
+        return this.parallel;
+    }
+    
+    /**
+     * Gets the number of samples taken for each pixel column of the plot
+     * 
+     * @return the oversampling factor
+     */
+    public int getOversampling() {
+        return this.oversampling;
+    }
+    
+    /**
+     * Gets whether new coordinates are being calculated in the background
+     * 
+     * @return true if a calculation is in progress, false otherwise
+     */
+    public boolean isComputing() {
+        return this.computing;
+    }
+    
+    /**
+     * Gets the distance between the points of the plotted progressive pass, which is
+     * 1 once the coordinates are complete
+     * 
+     * @return the distance between the plotted points
+     */
+    public int getStride() {
+        return this.stride;
+    }
+    
     /**
      * Gets the visibility of the desired key
      * 
@@ -271,43 +1270,26 @@ public class CalculatorModel {
     }
     
     /**
-     * Returns the Y-Coordinates of the specified function key
+     * Returns the X-Coordinates of the specified function key
      * 
-     * @param key the function key to get the Y coordinates of
-     * @return 2-dimensional array of Y-coordinates
+     * @param key the function key to get the X coordinates of
+     * @return array of X-coordinates
      */
-    public double[][] getYCoordinates(int key){
-        switch(key) {
-            case 0: return y1;
-            case 1: return y2;
-            case 2: return y3;
-            default:return null;
-        }
+    public double[] getXCoordinates(int key){
+        if(key<KEY_POLYNOMIAL || key>KEY_SECOND_DERIVATIVE) return null;
+        return this.x[key];
     }
     
-    // ---------------------------------------------------------------------------------
-    
     /**
-     * Calculates the polynomial at <code>n</code> points between values <code>start</code> and
-     * <code>end</code>, storing both the real and complex portions into a 2 dimensional array.
+     * Returns the Y-Coordinates of the specified function key
      * 
-     * @return a 2 dimensional array containing y-coordinates for real and imaginary values
+     * @param key the function key to get the Y coordinates of
+     * @return 2-dimensional array of Y-coordinates
      */
-    private double[][] getPolynomialCoordinates(Poly p) {
-        double[][] array = new double[2][n+1];
-        
-        Rational h = end.sub(start).div(new Rational(n)); 
-        Rational x = new Rational(start); // Copy s
-        Complex  y = null;
-        for(int i=0;i<n+1;i++) {
-            y = p.evalAt(new Complex(x));
-            array[0][i] = y.getReal().eval().doubleValue();
-            array[1][i] = y.getImaginary().eval().doubleValue();
-            x = x.add(h);
-        }
-        
-        return array;
+    public double[][] getYCoordinates(int key){
+        if(key<KEY_POLYNOMIAL || key>KEY_SECOND_DERIVATIVE) return null;
+        return this.y[key];
     }
     
-    
 }
+    
\ No newline at end of file
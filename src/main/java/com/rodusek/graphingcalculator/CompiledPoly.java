@@ -0,0 +1,415 @@
+package com.rodusek.graphingcalculator;
+
+import java.math.BigInteger;
+
+/**
+ * The <code>CompiledPoly</code> class is an immutable, double-precision copy of a <code>Poly</code>
+ * used for plotting, where exact arithmetic isn't required.
+ * <p>The real and imaginary parts of the coefficients are flattened into two <code>double</code>
+ * arrays so that evaluating the polynomial at a real point is a primitive Horner loop that
+ * allocates nothing.</p>
+ * <p>A <code>Poly</code> held as an unexpanded expression is compiled to that expression instead,
+ * which is evaluated directly. The series of its nodes are held in scratch arrays kept by each
+ * thread, so evaluating an expression allocates nothing either once they have grown to fit.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see Poly#compileDouble()
+ */
+public final class CompiledPoly {
+
+    private final int      deg;  // the degree of the polynomial
+    private final int[]    exps; // the exponent of each term in sparse form, or null in dense form
+    private final double[] re;  // real part of the coefficients, in ascending order
+    private final double[] im;  // imaginary part of the coefficients, in ascending order
+    private final Expression expr; // the expression evaluated in place of the coefficients, or null
+    
+    private static final ThreadLocal<Expression.Scratch> SCRATCH = ThreadLocal.withInitial(Expression.Scratch::new); // Scratch arrays reused by each thread
+
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Constructs a new <code>CompiledPoly</code> from the numerators of the coefficients of a
+     * polynomial over their shared denominator, in ascending order of magnitude. In sparse form
+     * the numerators are those of the terms with the exponents <code>exps</code>.
+     *
+     * @param exps the exponents of the terms in sparse form, or null in dense form
+     * @param re the real parts of the numerators
+     * @param im the imaginary parts of the numerators, or null if they are all zero
+     * @param den the shared positive denominator
+     */
+    CompiledPoly(final int[] exps, final BigInteger[] re, final BigInteger[] im, final BigInteger den) {
+        this.deg  = exps == null ? re.length - 1 : exps[exps.length-1];
+        this.exps = exps;
+        this.expr = null;
+        this.re   = new double[re.length];
+        this.im   = new double[re.length];
+        for(int i = 0; i < re.length; i++) {
+            this.re[i] = Rational.doubleValue(re[i], den);
+            this.im[i] = im == null ? 0 : Rational.doubleValue(im[i], den);
+        }
+    }
+    
+    /**
+     * Constructs a new <code>CompiledPoly</code> that evaluates an unexpanded expression.
+     *
+     * @param expr the expression of the polynomial
+     */
+    CompiledPoly(final Expression expr) {
+        this.deg  = (int) Math.min(expr.degree, Integer.MAX_VALUE);
+        this.exps = null;
+        this.expr = expr;
+        this.re   = null;
+        this.im   = null;
+    }
+
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Evaluates the polynomial at the real value <code>x</code>, storing the real part
+     * of the result in <code>out[0]</code> and the imaginary part in <code>out[1]</code>.
+     *
+     * @param x the point to evaluate at
+     * @param out an array of at least 2 values to hold the result
+     */
+    public void eval(final double x, final double[] out) {
+        if(this.expr != null) {
+            final Expression.Scratch scratch = SCRATCH.get();
+            final double[] re = scratch.push(1);
+            final double[] im = scratch.push(1);
+            this.expr.evalAt(x, 1, re, im, scratch);
+            out[0] = re[0];
+            out[1] = im[0];
+            scratch.pop(2);
+            return;
+        }
+        if(this.exps != null) {
+            this.evalSparse(x, 0, out);
+            return;
+        }
+        double yr = 0;
+        double yi = 0;
+        // Use Horner's Method; x is real so both parts can be evaluated independently
+        for(int i = this.deg; i >= 0; i--) {
+            yr = yr * x + this.re[i];
+            yi = yi * x + this.im[i];
+        }
+        out[0] = yr;
+        out[1] = yi;
+    }
+    
+    /**
+     * Evaluates the polynomial and its first <code>out.length-1</code> derivatives at the real
+     * value <code>x</code> in a single pass of Horner's Method. The real part of the j-th derivative
+     * is stored in <code>out[j][0]</code> and the imaginary part in <code>out[j][1]</code>.
+     *
+     * @param x the point to evaluate at
+     * @param out an array of 2 values to hold the result for each derivative
+     */
+    public void eval(final double x, final double[][] out) {
+        if(this.expr != null) {
+            final Expression.Scratch scratch = SCRATCH.get();
+            final double[] re = scratch.push(out.length);
+            final double[] im = scratch.push(out.length);
+            this.evalExpression(x, out.length, re, im, scratch);
+            for(int j = 0; j < out.length; j++) {
+                out[j][0] = re[j];
+                out[j][1] = im[j];
+            }
+            scratch.pop(2);
+            return;
+        }
+        if(this.exps != null) {
+            for(int j = 0; j < out.length; j++) {
+                this.evalSparse(x, j, out[j]);
+            }
+            return;
+        }
+        final int k = out.length - 1;
+        for(int j = 0; j <= k; j++) {
+            out[j][0] = 0;
+            out[j][1] = 0;
+        }
+        for(int c = this.deg; c >= 0; c--) {
+            for(int j = k; j > 0; j--) {
+                out[j][0] = out[j][0] * x + out[j-1][0];
+                out[j][1] = out[j][1] * x + out[j-1][1];
+            }
+            out[0][0] = out[0][0] * x + this.re[c];
+            out[0][1] = out[0][1] * x + this.im[c];
+        }
+        // The accumulated j-th derivative is divided by j!
+        double factorial = 1;
+        for(int j = 2; j <= k; j++) {
+            factorial *= j;
+            out[j][0] *= factorial;
+            out[j][1] *= factorial;
+        }
+    }
+
+    /**
+     * Evaluates the polynomial at every point of <code>xs</code>, storing the real and
+     * imaginary parts of the results in <code>outRe</code> and <code>outIm</code>.
+     *
+     * @param xs the points to evaluate at
+     * @param outRe the array to hold the real parts, at least as long as xs
+     * @param outIm the array to hold the imaginary parts, at least as long as xs
+     */
+    public void eval(final double[] xs, final double[] outRe, final double[] outIm) {
+        if(this.expr != null) {
+            final Expression.Scratch scratch = SCRATCH.get();
+            final double[] re = scratch.push(1);
+            final double[] im = scratch.push(1);
+            for(int j = 0; j < xs.length; j++) {
+                this.expr.evalAt(xs[j], 1, re, im, scratch);
+                outRe[j] = re[0];
+                outIm[j] = im[0];
+            }
+            scratch.pop(2);
+            return;
+        }
+        if(this.exps != null) {
+            final Expression.Scratch scratch = SCRATCH.get();
+            final double[] v = scratch.push(2);
+            for(int j = 0; j < xs.length; j++) {
+                this.evalSparse(xs[j], 0, v);
+                outRe[j] = v[0];
+                outIm[j] = v[1];
+            }
+            scratch.pop(1);
+            return;
+        }
+        final double[] re = this.re;
+        final double[] im = this.im;
+        for(int j = 0; j < xs.length; j++) {
+            final double x = xs[j];
+            double yr = 0;
+            double yi = 0;
+            for(int i = this.deg; i >= 0; i--) {
+                yr = yr * x + re[i];
+                yi = yi * x + im[i];
+            }
+            outRe[j] = yr;
+            outIm[j] = yi;
+        }
+    }
+
+    /**
+     * Evaluates the polynomial and its derivatives at every point of <code>xs</code> in a single
+     * pass of Horner's Method. The j-th derivative at <code>xs[i]</code> is stored at index i of
+     * <code>out[j]</code>, with the real part in <code>out[j][0]</code> and the imaginary part in
+     * <code>out[j][1]</code>. Derivatives without an output array are skipped.
+     *
+     * @param xs the points to evaluate at
+     * @param out a 2 dimensional array of real and imaginary values for each derivative
+     */
+    public void eval(final double[] xs, final double[][]... out) {
+        this.eval(xs, 0, xs.length, out);
+    }
+    
+    /**
+     * Evaluates the polynomial and its derivatives at the points of <code>xs</code> with indices
+     * <code>from</code> (inclusive) to <code>to</code> (exclusive), storing the results at the
+     * same indices of <code>out</code> as {@link #eval(double[], double[][]...)} does.
+     *
+     * @param xs the points to evaluate at
+     * @param from the index of the first point
+     * @param to the index after the last point
+     * @param out a 2 dimensional array of real and imaginary values for each derivative
+     */
+    public void eval(final double[] xs, final int from, final int to, final double[][]... out) {
+        final Expression.Scratch scratch = SCRATCH.get();
+        if(this.expr != null) {
+            final double[] re = scratch.push(out.length);
+            final double[] im = scratch.push(out.length);
+            for(int i = from; i < to; i++) {
+                this.evalExpression(xs[i], out.length, re, im, scratch);
+                for(int j = 0; j < out.length; j++) {
+                    if(out[j]==null) continue;
+                    out[j][0][i] = re[j];
+                    out[j][1][i] = im[j];
+                }
+            }
+            scratch.pop(2);
+            return;
+        }
+        if(this.exps != null) {
+            final double[] v = scratch.push(2);
+            for(int i = from; i < to; i++) {
+                for(int j = 0; j < out.length; j++) {
+                    if(out[j]==null) continue;
+                    this.evalSparse(xs[i], j, v);
+                    out[j][0][i] = v[0];
+                    out[j][1][i] = v[1];
+                }
+            }
+            scratch.pop(1);
+            return;
+        }
+        final double[] re = this.re;
+        final double[] im = this.im;
+        final int      k  = out.length - 1;
+        final double[] rr = scratch.push(k+1); // accumulated j-th derivatives, divided by j!
+        final double[] ri = scratch.push(k+1);
+        final double[] factorial = scratch.push(k+1);
+        factorial[0] = 1;
+        for(int j = 1; j <= k; j++) {
+            factorial[j] = factorial[j-1] * j;
+        }
+
+        for(int i = from; i < to; i++) {
+            final double x = xs[i];
+            for(int j = 0; j <= k; j++) {
+                rr[j] = 0;
+                ri[j] = 0;
+            }
+            for(int c = this.deg; c >= 0; c--) {
+                for(int j = k; j > 0; j--) {
+                    rr[j] = rr[j] * x + rr[j-1];
+                    ri[j] = ri[j] * x + ri[j-1];
+                }
+                rr[0] = rr[0] * x + re[c];
+                ri[0] = ri[0] * x + im[c];
+            }
+            for(int j = 0; j <= k; j++) {
+                if(out[j]==null) continue;
+                out[j][0][i] = rr[j] * factorial[j];
+                out[j][1][i] = ri[j] * factorial[j];
+            }
+        }
+        scratch.pop(3);
+    }
+
+    /**
+     * Evaluates the j-th derivative of a sparse polynomial at the real value <code>x</code> by
+     * Horner's Method from term to term, raising x across the gap between two exponents by
+     * repeated squaring. The real part of the result is stored in <code>out[0]</code> and the
+     * imaginary part in <code>out[1]</code>.
+     */
+    private void evalSparse(final double x, final int j, final double[] out) {
+        double yr = 0;
+        double yi = 0;
+        int    last = -1;
+        for(int k = this.exps.length - 1; k >= 0 && this.exps[k] >= j; k--) {
+            final int e = this.exps[k];
+            // The j-th derivative of x^e is e!/(e-j)! x^(e-j)
+            double falling = 1;
+            for(int m = 0; m < j; m++) {
+                falling *= e - m;
+            }
+            if(last >= 0) {
+                final double g = pow(x, last - e);
+                yr *= g;
+                yi *= g;
+            }
+            yr += this.re[k] * falling;
+            yi += this.im[k] * falling;
+            last = e;
+        }
+        if(last >= 0) {
+            final double g = pow(x, last - j);
+            yr *= g;
+            yi *= g;
+        }
+        out[0] = yr;
+        out[1] = yi;
+    }
+    
+    /**
+     * Evaluates the expression and its first <code>n-1</code> derivatives at the real
+     * value <code>x</code>, storing the real part of the j-th derivative in <code>re[j]</code>
+     * and the imaginary part in <code>im[j]</code>.
+     */
+    private void evalExpression(final double x, final int n, final double[] re, final double[] im,
+                                final Expression.Scratch scratch) {
+        this.expr.evalAt(x, n, re, im, scratch);
+        // The expression gives the j-th derivative divided by j!
+        double factorial = 1;
+        for(int j = 2; j < n; j++) {
+            factorial *= j;
+            re[j] *= factorial;
+            im[j] *= factorial;
+        }
+    }
+    
+    /**
+     * Finds the first <code>n</code> terms of the Taylor series of the polynomial at the real
+     * value <code>x</code>, where term j is the j-th derivative divided by j!, storing the real
+     * parts in <code>re</code> and the imaginary parts in <code>im</code>. This is how an
+     * expanded subtree of an expression is evaluated, so it allocates nothing.
+     *
+     * @param x the point to evaluate at
+     * @param n the number of terms to find
+     * @param re the array to hold the real parts, of at least n values
+     * @param im the array to hold the imaginary parts, of at least n values
+     * @param scratch the arrays to hold intermediate values
+     */
+    void evalSeries(final double x, final int n, final double[] re, final double[] im,
+                    final Expression.Scratch scratch) {
+        if(this.expr != null) {
+            this.expr.evalAt(x, n, re, im, scratch);
+            return;
+        }
+        if(this.exps != null) {
+            final double[] v = scratch.push(2);
+            double factorial = 1;
+            for(int j = 0; j < n; j++) {
+                if(j > 1) factorial *= j;
+                this.evalSparse(x, j, v);
+                re[j] = v[0] / factorial;
+                im[j] = v[1] / factorial;
+            }
+            scratch.pop(1);
+            return;
+        }
+        for(int j = 0; j < n; j++) {
+            re[j] = 0;
+            im[j] = 0;
+        }
+        // Horner's Method accumulates the j-th derivative divided by j!
+        for(int c = this.deg; c >= 0; c--) {
+            for(int j = n - 1; j > 0; j--) {
+                re[j] = re[j] * x + re[j-1];
+                im[j] = im[j] * x + im[j-1];
+            }
+            re[0] = re[0] * x + this.re[c];
+            im[0] = im[0] * x + this.im[c];
+        }
+    }
+    
+    /**
+     * Raises x to the non-negative power n by repeated squaring
+     */
+    private static double pow(double x, int n) {
+        double res = 1;
+        while(n > 0) {
+            if((n & 1) != 0) res *= x;
+            x *= x;
+            n >>= 1;
+        }
+        return res;
+    }
+    
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Returns the degree of the compiled polynomial
+     *
+     * @return the degree
+     */
+    public int getDegree() {
+        return this.deg;
+    }
+    
+    /**
+     * Returns the number of coefficients stored, which is the degree plus one in dense
+     * form and the number of terms in sparse form. For an expression it is the number
+     * of operations to evaluate it.
+     *
+     * @return the number of coefficients
+     */
+    public int getTerms() {
+        if(this.expr != null) return (int) Math.min(this.expr.cost, Integer.MAX_VALUE);
+        return this.re.length;
+    }
+}
@@ -1,5 +1,6 @@
 package com.rodusek.graphingcalculator;
 
+import java.math.BigInteger;
 import java.util.StringTokenizer;
 
 /**
@@ -150,7 +151,7 @@ public class Complex implements Arithmetic<Complex>, Comparable<Complex>{
     }
     
     /**
-     * Evaluates this<sup>other</sup> and returns the result
+     * Evaluates this<sup>other</sup> and returns the result, by repeated squaring
      * 
      * @param other the value to be exponentiated (must be whole number)
      * @return the calculated value
@@ -159,11 +160,18 @@ public class Complex implements Arithmetic<Complex>, Comparable<Complex>{
     @Override
     public Complex exp(Complex other) throws ComplexException{
         if(!other.im.equals(Rational.ZERO)) throw new ComplexException(ComplexException.Flags.INVALID_EXPONENT);
-        if(!other.re.getDenominator().equals(Rational.ONE))throw new ComplexException(ComplexException.Flags.INVALID_EXPONENT);
+        if(!other.re.isInteger() || other.re.isNegative())throw new ComplexException(ComplexException.Flags.INVALID_EXPONENT);
+        final BigInteger e = other.re.getNumerator();
+        if(e.bitLength() > 31) throw new ComplexException(ComplexException.Flags.INVALID_EXPONENT);
         
-        Complex res = new Complex(this);
-        for(int i = 0; i<other.re.getNumerator().intValue()-1; i++) {
-            res = res.mul(this);
+        // Real values are raised without the cross terms
+        if(this.im.equals(Rational.ZERO)) return new Complex(this.re.exp(other.re));
+        
+        // Square for each bit of the exponent from the top, multiplying in this for each set bit
+        Complex res = Complex.ONE;
+        for(int i = e.bitLength() - 1; i >= 0; i--) {
+            res = res.mul(res);
+            if(e.testBit(i)) res = res.mul(this);
         }
         return res;
     }
@@ -284,6 +292,16 @@ public class Complex implements Arithmetic<Complex>, Comparable<Complex>{
         }
     }
     
+    /**
+     * Returns a hash code for this <code>Complex</code>, consistent with <code>equals</code>
+     * 
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * this.re.hashCode() + this.im.hashCode();
+    }
+    
     
     /**
      * Returns a string object representing the specified <code>Complex</code>.
@@ -0,0 +1,456 @@
+package com.rodusek.graphingcalculator;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * The <code>Convolution</code> class multiplies polynomials with integer coefficients exactly.
+ * <p>Three algorithms are available, and {@link #multiply(BigInteger[], BigInteger[])} picks
+ * between them by the length of the shorter operand and the size of the coefficients:</p>
+ * <ul>
+ * <li>schoolbook multiplication, in <code>long</code> arithmetic when the result is known to fit,
+ * for short operands;</li>
+ * <li>Karatsuba multiplication, which trades one of the four half-size products for a few
+ * additions, for operands of medium length;</li>
+ * <li>a multi-modular number theoretic transform, which convolves the residues modulo as many
+ * word-sized primes as the coefficient bound needs and rebuilds the exact coefficients by the
+ * Chinese Remainder Theorem, for long operands.</li>
+ * </ul>
+ * <p>Every algorithm is exact, so the choice only affects the speed and never the result.
+ * The crossover points were picked by benchmarking operands of 8 to 2048 coefficients of 30 to
+ * 2000 bits: Karatsuba wins from about 24 coefficients, and the transform wins once the operands
+ * are longer than about 24 coefficients per prime it needs.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see Poly#mul(Poly)
+ */
+public final class Convolution {
+    
+    private static final int KARATSUBA_THRESHOLD = 24; // Shortest operand to use Karatsuba for
+    private static final int NTT_THRESHOLD       = 96; // Shortest operand to use the transform for
+    private static final int NTT_PER_PRIME       = 24; // Shortest operand to use the transform for, per prime needed
+    
+    private static final int   NTT_LOG   = 18;              // Every prime is c*2^NTT_LOG+1, the longest transform
+    private static final int[] PRIMES    = nttPrimes();     // Primes between 2^30 and 2^31 for the transform
+    private static final int[] ROOTS     = nttRoots(PRIMES); // A primitive root of each prime
+    private static final int   BITS_PER_PRIME = 30;         // Every prime is larger than 2^BITS_PER_PRIME
+    
+    // ---------------------------------------------------------------------------------
+    
+    private Convolution() {}
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Multiplies two polynomials with Gaussian integer coefficients. The real and imaginary
+     * parts are given as separate arrays in ascending order; a <code>null</code> imaginary
+     * part is taken to be zero.
+     * <p>When both operands are complex the product uses three real convolutions rather than four.</p>
+     *
+     * @param ar the real parts of the first polynomial
+     * @param ai the imaginary parts of the first polynomial, or null
+     * @param br the real parts of the second polynomial
+     * @param bi the imaginary parts of the second polynomial, or null
+     * @return an array holding the real parts of the product at index 0, and the imaginary parts
+     *         at index 1 (null when the product is real)
+     */
+    public static BigInteger[][] multiply(final BigInteger[] ar, final BigInteger[] ai,
+                                          final BigInteger[] br, final BigInteger[] bi) {
+        if(ai == null && bi == null) {
+            return new BigInteger[][] { multiply(ar, br), null };
+        }
+        if(ai == null) {
+            return new BigInteger[][] { multiply(ar, br), multiply(ar, bi) };
+        }
+        if(bi == null) {
+            return new BigInteger[][] { multiply(ar, br), multiply(ai, br) };
+        }
+        // (ar + i*ai)(br + i*bi) = (ar*br - ai*bi) + i((ar+ai)(br+bi) - ar*br - ai*bi)
+        final BigInteger[] rr = multiply(ar, br);
+        final BigInteger[] ii = multiply(ai, bi);
+        final BigInteger[] ss = multiply(add(ar, ai), add(br, bi));
+        final BigInteger[] re = new BigInteger[rr.length];
+        final BigInteger[] im = new BigInteger[rr.length];
+        for(int i = 0; i < rr.length; i++) {
+            re[i] = rr[i].subtract(ii[i]);
+            im[i] = ss[i].subtract(rr[i]).subtract(ii[i]);
+        }
+        return new BigInteger[][] { re, im };
+    }
+    
+    /**
+     * Multiplies two polynomials with integer coefficients given in ascending order, choosing
+     * the algorithm by the length of the shorter operand and the size of the coefficients.
+     *
+     * @param a the coefficients of the first polynomial
+     * @param b the coefficients of the second polynomial
+     * @return the coefficients of the product, of length a.length + b.length - 1
+     */
+    public static BigInteger[] multiply(final BigInteger[] a, final BigInteger[] b) {
+        final int min  = Math.min(a.length, b.length);
+        final int bits = bitLength(a) + bitLength(b) + 32 - Integer.numberOfLeadingZeros(min);
+        if(bits < Long.SIZE - 1) {
+            return schoolbookLong(a, b);
+        }
+        if(min < KARATSUBA_THRESHOLD) {
+            return schoolbook(a, b);
+        }
+        // The transform costs a Chinese Remainder step per coefficient that grows with the
+        // square of the number of primes, so larger coefficients need longer operands
+        final int primes = (bits + BITS_PER_PRIME) / BITS_PER_PRIME;
+        if(min >= NTT_THRESHOLD && min >= NTT_PER_PRIME * primes && primes <= PRIMES.length
+                && a.length + b.length - 1 <= 1 << NTT_LOG) {
+            return ntt(a, b, bits);
+        }
+        return karatsuba(a, b);
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Multiplies two polynomials by the schoolbook method.
+     *
+     * @param a the coefficients of the first polynomial
+     * @param b the coefficients of the second polynomial
+     * @return the coefficients of the product
+     */
+    static BigInteger[] schoolbook(final BigInteger[] a, final BigInteger[] b) {
+        final BigInteger[] res = zeros(a.length + b.length - 1);
+        for(int i = 0; i < a.length; i++) {
+            if(a[i].signum() == 0) continue;
+            for(int j = 0; j < b.length; j++) {
+                if(b[j].signum() == 0) continue;
+                res[i+j] = res[i+j].add(a[i].multiply(b[j]));
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Multiplies two polynomials by the schoolbook method in <code>long</code> arithmetic.
+     * The caller must make sure that every partial sum fits in a <code>long</code>.
+     */
+    private static BigInteger[] schoolbookLong(final BigInteger[] a, final BigInteger[] b) {
+        final long[] la  = longs(a);
+        final long[] lb  = longs(b);
+        final long[] acc = new long[a.length + b.length - 1];
+        for(int i = 0; i < la.length; i++) {
+            if(la[i] == 0) continue;
+            for(int j = 0; j < lb.length; j++) {
+                acc[i+j] += la[i] * lb[j];
+            }
+        }
+        final BigInteger[] res = new BigInteger[acc.length];
+        for(int i = 0; i < acc.length; i++) {
+            res[i] = BigInteger.valueOf(acc[i]);
+        }
+        return res;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Multiplies two polynomials by Karatsuba's method. An unbalanced product is split into
+     * blocks the length of the shorter operand, so that each recursive product is balanced.
+     *
+     * @param a the coefficients of the first polynomial
+     * @param b the coefficients of the second polynomial
+     * @return the coefficients of the product
+     */
+    static BigInteger[] karatsuba(final BigInteger[] a, final BigInteger[] b) {
+        final BigInteger[] low  = a.length <= b.length ? a : b;
+        final BigInteger[] high = a.length <= b.length ? b : a;
+        final int n = low.length;
+        final BigInteger[] res = zeros(a.length + b.length - 1);
+        for(int off = 0; off < high.length; off += n) {
+            final BigInteger[] block = Arrays.copyOfRange(high, off, off + n);
+            for(int i = Math.min(n, high.length - off); i < n; i++) {
+                block[i] = BigInteger.ZERO;
+            }
+            final BigInteger[] part = balanced(low, block);
+            final int len = Math.min(part.length, res.length - off);
+            for(int i = 0; i < len; i++) {
+                res[off+i] = res[off+i].add(part[i]);
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Multiplies two polynomials of the same length by Karatsuba's method, recursing until
+     * the halves are shorter than the threshold.
+     */
+    private static BigInteger[] balanced(final BigInteger[] a, final BigInteger[] b) {
+        final int n = a.length;
+        if(n < KARATSUBA_THRESHOLD) {
+            return schoolbook(a, b);
+        }
+        final int m = n / 2;
+        final BigInteger[] a0 = Arrays.copyOfRange(a, 0, m);
+        final BigInteger[] a1 = Arrays.copyOfRange(a, m, n);
+        final BigInteger[] b0 = Arrays.copyOfRange(b, 0, m);
+        final BigInteger[] b1 = Arrays.copyOfRange(b, m, n);
+    
+        final BigInteger[] z0 = balanced(a0, b0);
+        final BigInteger[] z2 = balanced(a1, b1);
+        final BigInteger[] z1 = balanced(add(a1, a0), add(b1, b0));
+    
+        // a*b = z0 + (z1 - z0 - z2)*x^m + z2*x^2m
+        final BigInteger[] res = zeros(2*n - 1);
+        for(int i = 0; i < z0.length; i++) {
+            res[i] = z0[i];
+            z1[i]  = z1[i].subtract(z0[i]);
+        }
+        for(int i = 0; i < z2.length; i++) {
+            res[2*m+i] = z2[i];
+            z1[i]      = z1[i].subtract(z2[i]);
+        }
+        for(int i = 0; i < z1.length; i++) {
+            res[m+i] = res[m+i].add(z1[i]);
+        }
+        return res;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Multiplies two polynomials by the number theoretic transform modulo several primes, then
+     * rebuilds each coefficient from its residues by Garner's algorithm. Enough primes are used
+     * for their product to exceed twice the largest possible coefficient, so that negative
+     * coefficients are recovered exactly.
+     *
+     * @param a the coefficients of the first polynomial
+     * @param b the coefficients of the second polynomial
+     * @param bits a bound on the bit length of every coefficient of the product
+     * @return the coefficients of the product
+     */
+    static BigInteger[] ntt(final BigInteger[] a, final BigInteger[] b, final int bits) {
+        final int len   = a.length + b.length - 1;
+        final int count = (bits + BITS_PER_PRIME) / BITS_PER_PRIME;
+        int size = 1;
+        while(size < len) size <<= 1;
+    
+        // Convolve the residues modulo each prime
+        final long[][] residues = new long[count][];
+        final long[]   fa       = new long[size];
+        final long[]   fb       = new long[size];
+        for(int k = 0; k < count; k++) {
+            final long p = PRIMES[k];
+            Arrays.fill(fa, 0);
+            Arrays.fill(fb, 0);
+            residues(a, p, fa);
+            residues(b, p, fb);
+            transform(fa, p, ROOTS[k], false);
+            transform(fb, p, ROOTS[k], false);
+            for(int i = 0; i < size; i++) {
+                fa[i] = fa[i] * fb[i] % p;
+            }
+            transform(fa, p, ROOTS[k], true);
+            residues[k] = Arrays.copyOf(fa, len);
+        }
+    
+        // Garner's algorithm: inverse[k][j] is the inverse of PRIMES[j] modulo PRIMES[k]
+        final long[][] inverse = new long[count][count];
+        BigInteger modulus = BigInteger.ONE;
+        for(int k = 0; k < count; k++) {
+            for(int j = 0; j < k; j++) {
+                inverse[k][j] = pow(PRIMES[j] % PRIMES[k], PRIMES[k] - 2, PRIMES[k]);
+            }
+            modulus = modulus.multiply(BigInteger.valueOf(PRIMES[k]));
+        }
+        final BigInteger half = modulus.shiftRight(1);
+        final BigInteger[] primes = new BigInteger[count];
+        for(int k = 0; k < count; k++) {
+            primes[k] = BigInteger.valueOf(PRIMES[k]);
+        }
+    
+        final BigInteger[] res   = new BigInteger[len];
+        final long[]       digit = new long[count];
+        for(int i = 0; i < len; i++) {
+            // Find the mixed radix digits of the coefficient
+            for(int k = 0; k < count; k++) {
+                final long p = PRIMES[k];
+                long t = residues[k][i];
+                for(int j = 0; j < k; j++) {
+                    t = (t - digit[j]) % p;
+                    if(t < 0) t += p;
+                    t = t * inverse[k][j] % p;
+                }
+                digit[k] = t;
+            }
+            // Evaluate the digits in Horner form, then move the value into the symmetric range
+            BigInteger v = BigInteger.valueOf(digit[count-1]);
+            for(int k = count - 2; k >= 0; k--) {
+                v = v.multiply(primes[k]).add(BigInteger.valueOf(digit[k]));
+            }
+            res[i] = v.compareTo(half) > 0 ? v.subtract(modulus) : v;
+        }
+        return res;
+    }
+    
+    /**
+     * Stores the residues of the coefficients modulo p at the start of out.
+     */
+    private static void residues(final BigInteger[] a, final long p, final long[] out) {
+        final BigInteger bp = BigInteger.valueOf(p);
+        for(int i = 0; i < a.length; i++) {
+            long r = a[i].bitLength() < Long.SIZE - 1 ? a[i].longValue() % p : a[i].mod(bp).longValue();
+            if(r < 0) r += p;
+            out[i] = r;
+        }
+    }
+    
+    /**
+     * Transforms the values in place by an iterative radix-2 number theoretic transform modulo p.
+     * The length of the values must be a power of two which divides p - 1.
+     *
+     * @param a the values to transform
+     * @param p the prime modulus
+     * @param g a primitive root modulo p
+     * @param inverse whether to compute the inverse transform
+     */
+    private static void transform(final long[] a, final long p, final long g, final boolean inverse) {
+        final int n = a.length;
+        // Bit reversal permutation
+        for(int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for(; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if(i < j) {
+                final long t = a[i]; a[i] = a[j]; a[j] = t;
+            }
+        }
+        for(int len = 2; len <= n; len <<= 1) {
+            long w = pow(g, (p - 1) / len, p);
+            if(inverse) w = pow(w, p - 2, p);
+            final int half = len >> 1;
+            final long[] ws = new long[half];
+            ws[0] = 1;
+            for(int j = 1; j < half; j++) {
+                ws[j] = ws[j-1] * w % p;
+            }
+            for(int i = 0; i < n; i += len) {
+                for(int j = 0; j < half; j++) {
+                    final long u = a[i+j];
+                    final long v = a[i+j+half] * ws[j] % p;
+                    a[i+j]      = u + v < p ? u + v : u + v - p;
+                    a[i+j+half] = u - v >= 0 ? u - v : u - v + p;
+                }
+            }
+        }
+        if(inverse) {
+            final long nInv = pow(n, p - 2, p);
+            for(int i = 0; i < n; i++) {
+                a[i] = a[i] * nInv % p;
+            }
+        }
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Finds every prime of the form c*2^NTT_LOG+1 between 2^30 and 2^31, largest first.
+     */
+    private static int[] nttPrimes() {
+        final int[] primes = new int[1 << (31 - NTT_LOG)];
+        int count = 0;
+        for(long c = (1L << (31 - NTT_LOG)) - 1; c >= 1L << (30 - NTT_LOG); c--) {
+            final long p = (c << NTT_LOG) + 1;
+            if(BigInteger.valueOf(p).isProbablePrime(40)) {
+                primes[count++] = (int) p;
+            }
+        }
+        return Arrays.copyOf(primes, count);
+    }
+    
+    /**
+     * Finds the smallest primitive root of each prime, that is the smallest g for which
+     * g^((p-1)/q) isn't 1 for any prime factor q of p-1.
+     */
+    private static int[] nttRoots(final int[] primes) {
+        final int[] roots = new int[primes.length];
+        for(int k = 0; k < primes.length; k++) {
+            final long p = primes[k];
+            // Collect the prime factors of p-1
+            long rest = p - 1;
+            final long[] factors = new long[32];
+            int count = 0;
+            for(long q = 2; q * q <= rest; q++) {
+                if(rest % q == 0) {
+                    factors[count++] = q;
+                    while(rest % q == 0) rest /= q;
+                }
+            }
+            if(rest > 1) factors[count++] = rest;
+            search:
+            for(long g = 2; ; g++) {
+                for(int i = 0; i < count; i++) {
+                    if(pow(g, (p - 1) / factors[i], p) == 1) continue search;
+                }
+                roots[k] = (int) g;
+                break;
+            }
+        }
+        return roots;
+    }
+    
+    /**
+     * Calculates b^e modulo m by repeated squaring, for m below 2^31.
+     */
+    private static long pow(long b, long e, final long m) {
+        long res = 1;
+        b %= m;
+        while(e > 0) {
+            if((e & 1) != 0) res = res * b % m;
+            b = b * b % m;
+            e >>= 1;
+        }
+        return res;
+    }
+    
+    /**
+     * Returns the largest bit length of the magnitudes of the values.
+     */
+    private static int bitLength(final BigInteger[] a) {
+        int bits = 0;
+        for(BigInteger v : a) {
+            bits = Math.max(bits, v.bitLength());
+        }
+        return bits;
+    }
+    
+    /**
+     * Returns the values as longs. Each value must fit in a long.
+     */
+    private static long[] longs(final BigInteger[] a) {
+        final long[] res = new long[a.length];
+        for(int i = 0; i < a.length; i++) {
+            res[i] = a[i].longValue();
+        }
+        return res;
+    }
+    
+    /**
+     * Adds two polynomials, the shorter being padded with zeros.
+     */
+    private static BigInteger[] add(final BigInteger[] a, final BigInteger[] b) {
+        final BigInteger[] res = Arrays.copyOf(a.length >= b.length ? a : b, Math.max(a.length, b.length));
+        final BigInteger[] low = a.length >= b.length ? b : a;
+        for(int i = 0; i < low.length; i++) {
+            res[i] = res[i].add(low[i]);
+        }
+        return res;
+    }
+    
+    /**
+     * Returns an array of the given length filled with zeros.
+     */
+    private static BigInteger[] zeros(final int length) {
+        final BigInteger[] res = new BigInteger[length];
+        Arrays.fill(res, BigInteger.ZERO);
+        return res;
+    }
+}
@@ -0,0 +1,885 @@
+package com.rodusek.graphingcalculator;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * The <code>Expression</code> class is the tree of operations parsed from a polynomial equation,
+ * which is only expanded into the coefficients of a <code>Poly</code> when they are needed.
+ *
+ * <p>An expression such as (x+3i)<sup>2000</sup> is one sum and a power by repeated squaring to
+ * evaluate, but 2001 coefficients to expand. Each operation applied while parsing compares the cost
+ * of evaluating its node against the number of terms of its expansion; nodes that are no cheaper
+ * to evaluate are expanded straight away, so only compact trees are ever held.</p>
+ *
+ * <p>Sums and products are not judged one operation at a time. A run of them such as
+ * (x-1)*(x-2)*...*(x-500) is gathered into a <code>Chain</code> while parsing and reduced as a
+ * balanced tree, so the expansion multiplies polynomials of similar size rather than growing one
+ * accumulator by a factor at a time.</p>
+ *
+ * <p>Evaluation finds the truncated Taylor series of the tree at a point, holding the value and
+ * the j-th derivatives divided by j!, so derivatives are found along with the value without
+ * expanding or differentiating the tree. Exact series are held like the coefficients of a
+ * <code>Poly</code>, as Gaussian integer numerators over a shared denominator, so no gcd is
+ * taken until the values are returned.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see Poly
+ */
+abstract class Expression implements Arithmetic<Expression> {
+    
+    protected final long degree; // an upper bound on the degree of the expansion
+    protected final long terms;  // an upper bound on the number of terms of the expansion
+    protected final long cost;   // the number of operations to evaluate the tree at a point
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Initializes the bounds of a new node
+     *
+     * @param degree an upper bound on the degree of the expansion
+     * @param terms an upper bound on the number of terms of the expansion
+     * @param cost the number of operations to evaluate the node at a point
+     */
+    protected Expression(final long degree, final long terms, final long cost) {
+        this.degree = degree;
+        this.terms  = Math.min(terms, degree + 1);
+        this.cost   = cost;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Adds two expressions together and returns the sum
+     * @param other the other expression to add to this
+     * @return the sum of the two expressions
+     */
+    @Override
+    public Expression add(final Expression other) {
+        return new Chain(false, this).append(other.balance(), false);
+    }
+    
+    /**
+     * Subtracts other from this expression and returns the difference
+     * @param other the other expression to subtract from this
+     * @return the difference of the two expressions
+     */
+    @Override
+    public Expression sub(final Expression other) {
+        return new Chain(false, this).append(other.balance(), true);
+    }
+    
+    /**
+     * Multiplies two expressions together and returns the product
+     * @param other the other expression to multiply this by
+     * @return the product of the two expressions
+     */
+    @Override
+    public Expression mul(final Expression other) {
+        return new Chain(true, this).append(other.balance(), false);
+    }
+    
+    /**
+     * Divides this expression by the constant other, as a product with its reciprocal.
+     * @param other the constant expression to divide this by
+     * @return the quotient of the two expressions
+     * @throws PolyException if the divisor is not a constant
+     * @throws ComplexException if the divisor is zero
+     */
+    @Override
+    public Expression div(final Expression other) throws PolyException {
+        final Expression divisor = other.balance();
+        if(divisor instanceof Const) {
+            return this.mul(new Const(new Poly(Complex.ONE).div(((Const) divisor).p)));
+        }
+        return this.mul(new Expanded(new Poly(Complex.ONE).div(divisor.expand())));
+    }
+    
+    /**
+     * Raises this expression to the power of the constant other.
+     * @param other the constant expression to raise this to the power of
+     * @return the power of the expression
+     * @throws PolyException if the exponent is invalid
+     */
+    @Override
+    public Expression exp(final Expression other) throws PolyException {
+        final int e = other.expand().toExponent();
+        if(e == 0) return new Const(Complex.ONE);
+        if(this.degree * e > Integer.MAX_VALUE) throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
+        return e == 1 ? this : lazy(new Pow(this, e));
+    }
+    
+    /**
+     * Returns an expression whose value is <code>(this mod other)</code>
+     *
+     * @return null (modulo not valid at this point in time)
+     */
+    @Override
+    public Expression mod(final Expression other) {
+        return null;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Expands the expression into the coefficients of a <code>Poly</code>
+     *
+     * @return the expanded Poly
+     */
+    abstract Poly expand();
+    
+    /**
+     * Returns the first <code>order+1</code> terms of the Taylor series of the expression at the
+     * value x = (pr + pi*i)/pd, where index j holds the j-th derivative divided by j!
+     *
+     * @param x the value to evaluate at
+     * @param p the numerators pr and pi of x, and its denominator pd
+     * @param order the highest derivative to find
+     * @return the Taylor series
+     */
+    abstract Series series(Complex x, BigInteger[] p, int order);
+    
+    /**
+     * Finds the first <code>n</code> terms of the Taylor series of the expression at the
+     * real value x in double precision, storing the real parts in <code>re</code> and the
+     * imaginary parts in <code>im</code>. The intermediate series of the nodes are held in
+     * arrays taken from <code>scratch</code>, so nothing is allocated.
+     *
+     * @param x the value to evaluate at
+     * @param n the number of terms to find
+     * @param re the array to hold the real parts, of at least n values
+     * @param im the array to hold the imaginary parts, of at least n values
+     * @param scratch the arrays to hold the series of the nodes
+     */
+    abstract void evalAt(double x, int n, double[] re, double[] im, Scratch scratch);
+    
+    /**
+     * Returns whether this expression is the same tree as other, with equal constants
+     *
+     * @param other the other expression
+     * @return true if the trees match
+     */
+    abstract boolean matches(Expression other);
+    
+    /**
+     * Returns the tree of this expression, reducing it first if it is a chain of sums or products
+     *
+     * @return the tree
+     */
+    Expression balance() {
+        return this;
+    }
+    
+    /**
+     * Returns whether evaluating the tree is cheaper than evaluating its expansion
+     *
+     * @return true if the tree should be held unexpanded
+     */
+    boolean isCompact() {
+        return this.cost < this.terms;
+    }
+    
+    /**
+     * Evaluates the expression and its first <code>derivatives</code> derivatives at the value x
+     *
+     * @param x the value to evaluate at
+     * @param derivatives the number of derivatives to evaluate
+     * @return an array where index j holds the j-th derivative evaluated at x
+     */
+    Complex[] derivativesAt(final Complex x, final int derivatives) {
+        // Bring x over one denominator, as Poly#evalAt does
+        final Rational   xr = x.getReal();
+        final Rational   xi = x.getImaginary();
+        final BigInteger pd = lcm(xr.getDenominator(), xi.getDenominator());
+        final BigInteger[] p = { xr.getNumerator().multiply(pd.divide(xr.getDenominator())),
+                                 xi.getNumerator().multiply(pd.divide(xi.getDenominator())), pd };
+        final Series    t   = this.series(x, p, derivatives);
+        final Complex[] res = new Complex[derivatives + 1];
+        // The j-th derivative is j! times the j-th term of the series
+        BigInteger factorial = BigInteger.ONE;
+        for(int j = 0; j <= derivatives; j++) {
+            if(j > 1) factorial = factorial.multiply(BigInteger.valueOf(j));
+            res[j] = new Complex(new Rational(t.re[j].multiply(factorial), t.den),
+                                 new Rational(t.im[j].multiply(factorial), t.den));
+        }
+        return res;
+    }
+    
+    /**
+     * Returns the node itself if it is compact, and its expansion otherwise
+     */
+    private static Expression lazy(final Expression node) {
+        return node.isCompact() ? node : new Expanded(node.expand());
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * A stack of arrays that holds the series of the nodes while a tree is evaluated in double
+     * precision. Each node takes its arrays from the top and gives them back before it returns, so
+     * a node at the same depth reuses the same arrays at every point, and nothing is allocated once
+     * the stack has grown to the depth of the tree. A scratch must only be used by one thread.
+     */
+    static final class Scratch {
+    
+        private double[][] arrays = new double[16][];
+        private int        top    = 0;
+    
+        /**
+         * Takes an array of at least n values from the top of the stack, growing it if it is
+         * too short
+         */
+        double[] push(final int n) {
+            if(this.top == this.arrays.length) {
+                this.arrays = Arrays.copyOf(this.arrays, this.top * 2);
+            }
+            double[] a = this.arrays[this.top];
+            if(a == null || a.length < n) {
+                this.arrays[this.top] = a = new double[n];
+            }
+            this.top++;
+            return a;
+        }
+    
+        /**
+         * Gives back the <code>count</code> arrays at the top of the stack
+         */
+        void pop(final int count) {
+            this.top -= count;
+        }
+    }
+    
+    /**
+     * A truncated Taylor series with Gaussian integer numerators over a shared positive denominator
+     */
+    static final class Series {
+    
+        final BigInteger[] re;  // re[k]/den is the real part of the k-th term
+        final BigInteger[] im;  // im[k]/den is the imaginary part of the k-th term
+        final BigInteger   den; // the shared positive denominator
+    
+        /**
+         * Constructs a series of <code>order+1</code> zero terms over a denominator
+         */
+        Series(final int order, final BigInteger den) {
+            this.re  = new BigInteger[order + 1];
+            this.im  = new BigInteger[order + 1];
+            this.den = den;
+            Arrays.fill(this.re, BigInteger.ZERO);
+            Arrays.fill(this.im, BigInteger.ZERO);
+        }
+    
+        /**
+         * Returns the sum, or difference, of this series and other. The numerators are brought over
+         * the larger denominator when it is a multiple of the smaller one, and over the lowest
+         * common multiple otherwise, as Poly does.
+         */
+        Series add(final Series other, final boolean negate) {
+            BigInteger den = this.den;
+            BigInteger ts  = BigInteger.ONE;
+            BigInteger os  = BigInteger.ONE;
+            if(!this.den.equals(other.den)) {
+                final BigInteger[] qr = other.den.divideAndRemainder(this.den);
+                if(qr[1].signum() == 0) {
+                    den = other.den;
+                    ts  = qr[0];
+                }else if(this.den.mod(other.den).signum() == 0) {
+                    os  = this.den.divide(other.den);
+                }else {
+                    final BigInteger g = this.den.gcd(other.den);
+                    ts  = other.den.divide(g);
+                    os  = this.den.divide(g);
+                    den = this.den.multiply(ts);
+                }
+            }
+            final Series res = new Series(this.re.length - 1, den);
+            for(int k = 0; k < this.re.length; k++) {
+                final BigInteger br = other.re[k].multiply(os);
+                final BigInteger bi = other.im[k].multiply(os);
+                res.re[k] = this.re[k].multiply(ts).add(negate ? br.negate() : br);
+                res.im[k] = this.im[k].multiply(ts).add(negate ? bi.negate() : bi);
+            }
+            return res;
+        }
+    
+        /**
+         * Returns the product of this series and other, truncated to the same order
+         */
+        Series mul(final Series other) {
+            final Series res = new Series(this.re.length - 1, this.den.multiply(other.den));
+            for(int k = 0; k < this.re.length; k++) {
+                BigInteger sr = BigInteger.ZERO;
+                BigInteger si = BigInteger.ZERO;
+                for(int j = 0; j <= k; j++) {
+                    final BigInteger ar = this.re[j],    ai = this.im[j];
+                    final BigInteger br = other.re[k-j], bi = other.im[k-j];
+                    sr = sr.add(ar.multiply(br)).subtract(ai.multiply(bi));
+                    si = si.add(ar.multiply(bi)).add(ai.multiply(br));
+                }
+                res.re[k] = sr;
+                res.im[k] = si;
+            }
+            return res;
+        }
+    }
+    
+    /**
+     * Returns the series of a complex constant
+     */
+    private static Series constant(final Complex c, final int order) {
+        final Rational   cr  = c.getReal();
+        final Rational   ci  = c.getImaginary();
+        final BigInteger den = lcm(cr.getDenominator(), ci.getDenominator());
+        final Series     res = new Series(order, den);
+        res.re[0] = cr.getNumerator().multiply(den.divide(cr.getDenominator()));
+        res.im[0] = ci.getNumerator().multiply(den.divide(ci.getDenominator()));
+        return res;
+    }
+    
+    /**
+     * Calculates the lowest common multiple of two positive BigIntegers
+     */
+    private static BigInteger lcm(final BigInteger a, final BigInteger b) {
+        if(a.equals(b) || b.equals(BigInteger.ONE)) return a;
+        if(a.equals(BigInteger.ONE)) return b;
+        return a.divide(a.gcd(b)).multiply(b);
+    }
+    
+    /**
+     * Multiplies the first n terms of two truncated Taylor series in double precision into c,
+     * which must not be a or b
+     */
+    private static void mulSeries(final int n, final double[] ar, final double[] ai, final double[] br,
+                                  final double[] bi, final double[] cr, final double[] ci) {
+        for(int k = 0; k < n; k++) {
+            double sr = 0;
+            double si = 0;
+            for(int j = 0; j <= k; j++) {
+                sr += ar[j] * br[k-j] - ai[j] * bi[k-j];
+                si += ar[j] * bi[k-j] + ai[j] * br[k-j];
+            }
+            cr[k] = sr;
+            ci[k] = si;
+        }
+    }
+    
+    /**
+     * Returns the saturated product of two non-negative bounds
+     */
+    private static long product(final long a, final long b) {
+        return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * A run of sums, or of products, gathered by the parser and reduced as a balanced tree of lazy
+     * nodes. The tree is built as the operands are appended, like a binary counter: the partial
+     * results are held on a stack, and whenever the top two combine the same number of operands
+     * they are joined, so only one partial result per bit of the count is ever held. A chain is
+     * only ever held on the parser's operand stack, so it may be appended to in place.
+     */
+    static final class Chain extends Expression {
+    
+        private static final int SEQUENTIAL_DEGREE = 16;   // Highest degree of a run of products multiplied in turn
+        private static final int LARGE_BITS        = 2048; // Coefficient size past which short factors are multiplied in turn
+        private static final Poly ONE              = new Poly(Complex.ONE);
+    
+        private final boolean      product;                       // whether this is a run of products
+        private Expression[]       partial = new Expression[4];   // the partial results, oldest first
+        private boolean[]          negate  = new boolean[4];      // whether each partial sum is subtracted
+        private long[]             count   = new long[4];         // the number of operands in each partial result
+        private int                size    = 0;
+        private Poly               constant;                      // the constant operands folded together, or null
+    
+        /**
+         * Constructs a chain starting with the given operand. The bounds of a chain are unused, as
+         * it is always balanced before it is judged or evaluated.
+         */
+        Chain(final boolean product, final Expression first) {
+            super(0, 1, 0);
+            this.product = product;
+            this.append(first, false);
+        }
+    
+        /**
+         * Appends an operand to the chain, and returns the chain. Products of low total degree are
+         * multiplied in turn, as the product of such short operands is schoolbook either way. So is
+         * a short factor once the coefficients of the product are large: multiplying by it is then
+         * linear in their size, while joining two such products multiplies the large coefficients
+         * together, which <code>BigInteger</code> does in more than linear time.
+         */
+        Chain append(final Expression e, final boolean negate) {
+            if(e instanceof Const) {
+                final Poly c = ((Const) e).p;
+                if(this.constant == null) {
+                    this.constant = negate ? new Poly().sub(c) : c;
+                }else if(this.product) {
+                    this.constant = this.constant.mul(c);
+                }else {
+                    this.constant = negate ? this.constant.sub(c) : this.constant.add(c);
+                }
+                return this;
+            }
+            final int top = this.size - 1;
+            if(this.product && top >= 0 && (this.partial[top].degree + e.degree <= SEQUENTIAL_DEGREE
+                    || e.degree <= SEQUENTIAL_DEGREE && bitLength(this.partial[top]) >= LARGE_BITS)) {
+                this.partial[top] = lazy(new Mul(this.partial[top], e));
+                return this;
+            }
+            if(this.size == this.partial.length) {
+                this.partial = Arrays.copyOf(this.partial, this.size * 2);
+                this.negate  = Arrays.copyOf(this.negate, this.size * 2);
+                this.count   = Arrays.copyOf(this.count, this.size * 2);
+            }
+            this.partial[this.size] = e;
+            this.negate[this.size]  = negate;
+            this.count[this.size++] = 1;
+            while(this.size > 1 && this.count[this.size-2] == this.count[this.size-1]) {
+                this.join();
+            }
+            return this;
+        }
+    
+        /**
+         * Returns the largest bit length of the coefficients of an expanded partial result, or 0
+         */
+        private static int bitLength(final Expression e) {
+            return e instanceof Expanded ? ((Expanded) e).p.bitLength() : 0;
+        }
+    
+        /**
+         * Joins the top two partial results on the stack. A partial sum is held relative to the sign
+         * of its first operand, so the sum of two is subtracted when their signs differ.
+         */
+        private void join() {
+            final int i = this.size - 2;
+            this.partial[i] = lazy(this.product ? new Mul(this.partial[i], this.partial[i+1])
+                                                : new Add(this.partial[i], this.partial[i+1],
+                                                          this.negate[i] != this.negate[i+1]));
+            this.count[i]  += this.count[i+1];
+            this.partial[--this.size] = null;
+        }
+    
+        @Override
+        public Expression add(final Expression other) {
+            return this.product ? this.balance().add(other) : this.append(other.balance(), false);
+        }
+    
+        @Override
+        public Expression sub(final Expression other) {
+            return this.product ? this.balance().sub(other) : this.append(other.balance(), true);
+        }
+    
+        @Override
+        public Expression mul(final Expression other) {
+            return this.product ? this.append(other.balance(), false) : this.balance().mul(other);
+        }
+    
+        @Override
+        public Expression exp(final Expression other) throws PolyException {
+            return this.balance().exp(other);
+        }
+    
+        /**
+         * Joins the partial results left on the stack, newest first, then applies the folded
+         * constant. The result is left as the only partial result, so balancing again returns it.
+         */
+        @Override
+        Expression balance() {
+            if(this.constant == null && this.size == 1 && !this.negate[0]) {
+                return this.partial[0];
+            }
+            while(this.size > 1) {
+                this.join();
+            }
+            Expression res = this.size == 0 ? new Const(this.constant) : this.partial[0];
+            if(this.size > 0 && this.product && this.constant != null && !this.constant.equals(ONE)) {
+                res = lazy(new Mul(res, new Const(this.constant)));
+            }else if(this.size > 0 && !this.product && (this.constant != null || this.negate[0])) {
+                res = lazy(new Add(new Const(this.constant == null ? new Poly() : this.constant), res, this.negate[0]));
+            }
+            this.partial[0] = res;
+            this.negate[0]  = false;
+            this.count[0]   = Math.max(this.count[0], 1);
+            this.size       = 1;
+            this.constant   = null;
+            return res;
+        }
+    
+        @Override
+        boolean isCompact() {
+            return this.balance().isCompact();
+        }
+    
+        @Override
+        Poly expand() {
+            return this.balance().expand();
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            return this.balance().series(x, p, order);
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            this.balance().evalAt(x, n, re, im, scratch);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            return this.balance().matches(other.balance());
+        }
+    }
+    
+    /**
+     * A constant leaf
+     */
+    static final class Const extends Expression {
+    
+        private final Poly        p;     // the constant as a Poly of degree 0, for arithmetic with no gcd taken
+        private volatile double[] value; // the real and imaginary parts, found the first time it is evaluated in double precision
+    
+        Const(final Complex c) {
+            this(new Poly(c));
+        }
+    
+        Const(final Poly p) {
+            super(0, 1, 1);
+            this.p = p;
+        }
+    
+        /**
+         * Returns the constant in lowest terms, reducing it the first time it is needed
+         */
+        private Complex value() {
+            return this.p.evalAt(Complex.ZERO);
+        }
+    
+        /**
+         * Raises the constant to the power of the constant other as a constant
+         */
+        @Override
+        public Expression exp(final Expression other) throws PolyException {
+            final Expression e = other.balance();
+            return e instanceof Const ? new Const(this.p.exp(((Const) e).p)) : super.exp(e);
+        }
+    
+        @Override
+        Poly expand() {
+            return this.p;
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            return constant(this.value(), order);
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            Arrays.fill(re, 0, n, 0);
+            Arrays.fill(im, 0, n, 0);
+            double[] v = this.value;
+            if(v == null) {
+                final Complex c = this.value();
+                this.value = v = new double[] { c.getReal().doubleValue(), c.getImaginary().doubleValue() };
+            }
+            re[0] = v[0];
+            im[0] = v[1];
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            return other instanceof Const && this.value().equals(((Const) other).value());
+        }
+    }
+    
+    /**
+     * The variable leaf
+     */
+    static final class Var extends Expression {
+    
+        Var() {
+            super(1, 1, 1);
+        }
+    
+        @Override
+        Poly expand() {
+            return new Poly(Complex.ZERO, Complex.ONE);
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            final Series res = new Series(order, p[2]);
+            res.re[0] = p[0];
+            res.im[0] = p[1];
+            if(order > 0) res.re[1] = p[2];
+            return res;
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            Arrays.fill(re, 0, n, 0);
+            Arrays.fill(im, 0, n, 0);
+            re[0] = x;
+            if(n > 1) re[1] = 1;
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            return other instanceof Var;
+        }
+    }
+    
+    /**
+     * A leaf holding a subtree that has already been expanded, which is evaluated by Horner's Method
+     */
+    static final class Expanded extends Expression {
+    
+        private final Poly p;
+        private volatile CompiledPoly compiled; // built the first time it is evaluated in double precision
+    
+        Expanded(final Poly p) {
+            super(p.getDegree(), p.terms(), p.terms());
+            this.p = p;
+        }
+    
+        @Override
+        Poly expand() {
+            return this.p;
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            final Complex[] d = this.p.evalAt(x, order);
+            // The j-th term is the j-th derivative divided by j!
+            Series res       = constant(d[0], order);
+            long   factorial = 1;
+            for(int j = 1; j <= order; j++) {
+                factorial *= j;
+                final Series t = constant(d[j], 0);
+                final Series s = new Series(order, t.den.multiply(BigInteger.valueOf(factorial)));
+                s.re[j] = t.re[0];
+                s.im[j] = t.im[0];
+                res = res.add(s, false);
+            }
+            return res;
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            CompiledPoly c = this.compiled;
+            if(c == null) {
+                this.compiled = c = this.p.compileDouble();
+            }
+            c.evalSeries(x, n, re, im, scratch);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            return other instanceof Expanded && this.p.equals(((Expanded) other).p);
+        }
+    }
+    
+    /**
+     * The sum, or difference, of two expressions
+     */
+    static final class Add extends Expression {
+    
+        private final Expression left;
+        private final Expression right;
+        private final boolean    negate;
+    
+        Add(final Expression left, final Expression right, final boolean negate) {
+            super(Math.max(left.degree, right.degree), left.terms + right.terms, left.cost + right.cost + 1);
+            this.left   = left;
+            this.right  = right;
+            this.negate = negate;
+        }
+    
+        @Override
+        Poly expand() {
+            return this.negate ? this.left.expand().sub(this.right.expand())
+                               : this.left.expand().add(this.right.expand());
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            return this.left.series(x, p, order).add(this.right.series(x, p, order), this.negate);
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            final double[] br = scratch.push(n);
+            final double[] bi = scratch.push(n);
+            this.left.evalAt(x, n, re, im, scratch);
+            this.right.evalAt(x, n, br, bi, scratch);
+            for(int k = 0; k < n; k++) {
+                re[k] = this.negate ? re[k] - br[k] : re[k] + br[k];
+                im[k] = this.negate ? im[k] - bi[k] : im[k] + bi[k];
+            }
+            scratch.pop(2);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            if(!(other instanceof Add)) return false;
+            final Add o = (Add) other;
+            return this.negate == o.negate && this.left.matches(o.left) && this.right.matches(o.right);
+        }
+    }
+    
+    /**
+     * The product of two expressions
+     */
+    static final class Mul extends Expression {
+    
+        private final Expression left;
+        private final Expression right;
+    
+        Mul(final Expression left, final Expression right) {
+            super(left.degree + right.degree, product(left.terms, right.terms), left.cost + right.cost + 1);
+            this.left  = left;
+            this.right = right;
+        }
+    
+        @Override
+        Poly expand() {
+            return this.left.expand().mul(this.right.expand());
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            return this.left.series(x, p, order).mul(this.right.series(x, p, order));
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            final double[] ar = scratch.push(n);
+            final double[] ai = scratch.push(n);
+            final double[] br = scratch.push(n);
+            final double[] bi = scratch.push(n);
+            this.left.evalAt(x, n, ar, ai, scratch);
+            this.right.evalAt(x, n, br, bi, scratch);
+            mulSeries(n, ar, ai, br, bi, re, im);
+            scratch.pop(4);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            if(!(other instanceof Mul)) return false;
+            final Mul o = (Mul) other;
+            return this.left.matches(o.left) && this.right.matches(o.right);
+        }
+    }
+    
+    /**
+     * An expression raised to a positive integer power, evaluated by repeated squaring
+     */
+    static final class Pow extends Expression {
+    
+        private final Expression base;
+        private final int        n;
+    
+        Pow(final Expression base, final int n) {
+            super(base.degree * n, base.terms == 1 ? 1 : Long.MAX_VALUE,
+                  base.cost + 2 * (32 - Integer.numberOfLeadingZeros(n)));
+            this.base = base;
+            this.n    = n;
+        }
+    
+        @Override
+        Poly expand() {
+            return this.base.expand().exp(new Poly(new Complex(new Rational(this.n))));
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            final Series b = this.base.series(x, p, order);
+            Series res = b;
+            // Square for each bit of the exponent below the top, multiplying in the base for each set bit
+            for(int i = 30 - Integer.numberOfLeadingZeros(this.n); i >= 0; i--) {
+                res = res.mul(res);
+                if((this.n >> i & 1) != 0) res = res.mul(b);
+            }
+            return res;
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            final double[] br = scratch.push(n);
+            final double[] bi = scratch.push(n);
+            final double[] tr = scratch.push(n);
+            final double[] ti = scratch.push(n);
+            this.base.evalAt(x, n, br, bi, scratch);
+            System.arraycopy(br, 0, re, 0, n);
+            System.arraycopy(bi, 0, im, 0, n);
+            for(int i = 30 - Integer.numberOfLeadingZeros(this.n); i >= 0; i--) {
+                mulSeries(n, re, im, re, im, tr, ti);
+                if((this.n >> i & 1) != 0) {
+                    mulSeries(n, tr, ti, br, bi, re, im);
+                }else {
+                    System.arraycopy(tr, 0, re, 0, n);
+                    System.arraycopy(ti, 0, im, 0, n);
+                }
+            }
+            scratch.pop(4);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            if(!(other instanceof Pow)) return false;
+            final Pow o = (Pow) other;
+            return this.n == o.n && this.base.matches(o.base);
+        }
+    }
+    
+    /**
+     * The derivative of an expression, evaluated from one more term of its Taylor series
+     */
+    static final class Derivative extends Expression {
+    
+        private final Expression child;
+    
+        Derivative(final Expression child) {
+            super(Math.max(0, child.degree - 1), child.terms, child.cost);
+            this.child = child;
+        }
+    
+        @Override
+        Poly expand() {
+            return this.child.expand().diff();
+        }
+    
+        @Override
+        Series series(final Complex x, final BigInteger[] p, final int order) {
+            final Series t   = this.child.series(x, p, order + 1);
+            final Series res = new Series(order, t.den);
+            for(int k = 0; k <= order; k++) {
+                final BigInteger n = BigInteger.valueOf(k + 1);
+                res.re[k] = t.re[k+1].multiply(n);
+                res.im[k] = t.im[k+1].multiply(n);
+            }
+            return res;
+        }
+    
+        @Override
+        void evalAt(final double x, final int n, final double[] re, final double[] im, final Scratch scratch) {
+            final double[] tr = scratch.push(n + 1);
+            final double[] ti = scratch.push(n + 1);
+            this.child.evalAt(x, n + 1, tr, ti, scratch);
+            for(int k = 0; k < n; k++) {
+                re[k] = tr[k+1] * (k + 1);
+                im[k] = ti[k+1] * (k + 1);
+            }
+            scratch.pop(2);
+        }
+    
+        @Override
+        boolean matches(final Expression other) {
+            return other instanceof Derivative && this.child.matches(((Derivative) other).child);
+        }
+    }
+}
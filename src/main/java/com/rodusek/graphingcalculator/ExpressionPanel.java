@@ -12,6 +12,7 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.text.AbstractDocument;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
@@ -103,8 +104,9 @@ public class ExpressionPanel extends JPanel{
     
     /**
      * Private inner class that handles calls from the Plot button to create the graph of
-     * the given polynomial. It instantiates the new Polynomial and fires a property change if
-     * successful, or displays a failure message if it fails.
+     * the given polynomial. The text is parsed on the model's parse executor, then 
+     * the new Polynomial is applied to the model on the Event Dispatch Thread if successful, 
+     * or a failure message is displayed if it fails.
      *
      */
     private class ButtonListener implements ActionListener{
@@ -116,30 +118,91 @@ public class ExpressionPanel extends JPanel{
         @Override
         public void actionPerformed(final ActionEvent evt) {
             statusLabel.setForeground(SUCCESS_GREEN);
-            statusLabel.setText("Status: Successfully Plotted");
+            statusLabel.setText("Status: Computing...");
+            model.submit(new ParseTask(functionField.getText(), varField.getText(), 
+                                       startField.getText(),    endField.getText()));
+        }        
+    
+    }
+    
+    /**
+     * Private inner class that parses the input in the background. The parsed polynomial and
+     * range are handed back to the Event Dispatch Thread to update the model and status label.
+     *
+     */
+    private class ParseTask implements Runnable{
+    
+        private final String function;
+        private final String variable;
+        private final String startText;
+        private final String endText;
+    
+        private PolyCache.Entry p = null;
+        private Rational start = null;
+        private Rational end   = null;
+        private String   error = null;
+    
+        // ---------------------------------------------------------------------------------
+    
+        /**
+         * Constructor for the parse task. It takes a copy of the text in each field,
+         * since the fields can only be read from the Event Dispatch Thread.
+         */
+        public ParseTask(String function, String variable, String startText, String endText) {
+            this.function  = function;
+            this.variable  = variable;
+            this.startText = startText;
+            this.endText   = endText;
+        }        
+    
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
             try {
-                Poly      p     = new Poly(functionField.getText(),varField.getText());
-                Rational start = new Rational(startField.getText());
-                Rational end   = new Rational(endField.getText());
+                this.p     = model.getCache().get(function,variable);
+                this.start = new Rational(startText);
+                this.end   = new Rational(endText);
                 
                 if(start.sub(end).isPositive()||start.sub(end).equals(Rational.ZERO)) throw new IllegalArgumentException("Incorrect boundaries");
+            }catch(Exception e) {
+                this.error = e.getMessage();
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    ParseTask.this.apply();
+                }
+            });
+        }        
                 
-                model.setPoly(p);
-                model.setStart(start);
-                model.setEnd(end);
-                model.calculatePolynomialCoordinates();
+        /**
+         * Applies the parsed values to the model, or displays the failure message
+         */
+        private void apply() {
+            if(this.error!=null) {
+                statusLabel.setForeground(FAILURE_RED);
+                statusLabel.setText("Status: " + this.error);
+                return;
+            }
+            model.setPoly(p);
+            model.setStart(start);
+            model.setEnd(end);
                 
-                if(functionField.getText().contains("i")) 
-                    model.setVisibility(3, true);
-                else 
-                    model.setVisibility(3, false);
+            if(function.contains("i")) 
+                model.setVisibility(3, true);
+            else 
+                model.setVisibility(3, false);
                 
-                model.calculateYBounds();
+            // Only out of date functions are sampled; the y-boundaries are recalculated once the
+            // new coordinates are ready, and now in case only the imaginary visibility changed
+            model.calculatePolynomialCoordinates();
+            model.calculateYBounds();
                 
-            }catch(Exception e) {
-                statusLabel.setForeground(FAILURE_RED);
-                statusLabel.setText("Status: " + e.getMessage());
-            }
+            statusLabel.setForeground(SUCCESS_GREEN);
+            statusLabel.setText("Status: Successfully Plotted");
         }
         
     }
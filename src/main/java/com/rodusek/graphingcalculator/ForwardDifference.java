@@ -0,0 +1,301 @@
+package com.rodusek.graphingcalculator;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The <code>ForwardDifference</code> class evaluates a <code>Poly</code>, and optionally its
+ * first k derivatives, exactly at the evenly spaced points <i>start + i*h</i>.
+ * <p>A polynomial of degree d has a constant d-th forward difference, so once the table of
+ * differences has been seeded from d+1 evaluations, every following value is found using only
+ * d additions instead of a full Horner evaluation. The seeds for the derivatives are found in
+ * the same Horner pass as the polynomial.</p>
+ * <p>Every value is an integer combination of the d+1 seed values, so each table is kept as
+ * Gaussian integers over the common denominator of its seeds. Stepping is then plain
+ * <code>BigInteger</code> addition, with no gcd normalization.</p>
+ *
+ * <p><b>Usage:</b></p>
+ * <code>ForwardDifference fd = new ForwardDifference(p, start, h);</code><br>
+ * <code>Complex y0 = fd.next(); Complex y1 = fd.next(); ...</code>
+ *
+ * @author Matthew Rodusek
+ * @version 1.1, 2013-11-27
+ * @see Poly
+ */
+public class ForwardDifference {
+
+    private final BigInteger[][] re;  // re[j][k]/den[j] is the real part of the k-th difference of the j-th derivative
+    private final BigInteger[][] im;  // im[j][k]/den[j] is the imaginary part of the k-th difference of the j-th derivative
+    private final BigInteger[]   den; // den[j] is the common denominator of the table of the j-th derivative
+
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Constructs a new <code>ForwardDifference</code> for the polynomial <code>p</code>, starting
+     * at the point <code>start</code> and stepping by <code>h</code>.
+     *
+     * @param p the polynomial to evaluate
+     * @param start the first point to evaluate at
+     * @param h the distance between points
+     */
+    public ForwardDifference(final Poly p, final Rational start, final Rational h) {
+        this(p, 0, start, h);
+    }
+
+    /**
+     * Constructs a new <code>ForwardDifference</code> for the polynomial <code>p</code> and its
+     * first <code>derivatives</code> derivatives, starting at the point <code>start</code> and
+     * stepping by <code>h</code>.
+     *
+     * @param p the polynomial to evaluate
+     * @param derivatives the number of derivatives to evaluate along with p
+     * @param start the first point to evaluate at
+     * @param h the distance between points
+     */
+    public ForwardDifference(final Poly p, final int derivatives, final Rational start, final Rational h) {
+        this(p, derivatives, start, h, false);
+    }
+    
+    /**
+     * Constructs a new <code>ForwardDifference</code> for the polynomial <code>p</code> and its
+     * first <code>derivatives</code> derivatives, starting at the point <code>start</code> and
+     * stepping by <code>h</code>. The seeding evaluations are independent, so they can optionally
+     * be run in parallel on the common <code>ForkJoinPool</code>.
+     *
+     * @param p the polynomial to evaluate
+     * @param derivatives the number of derivatives to evaluate along with p
+     * @param start the first point to evaluate at
+     * @param h the distance between points
+     * @param parallel true to seed the table in parallel
+     */
+    public ForwardDifference(final Poly p, final int derivatives, final Rational start, final Rational h,
+                             final boolean parallel) {
+        final int deg = p.getDegree();
+
+        // Seed with d+1 Horner evaluations of the polynomial and its derivatives
+        final SeedTask task = new SeedTask(p, derivatives, start, h, new Complex[deg+1][], 0, deg+1);
+        if(parallel && deg > 0) {
+            ForkJoinPool.commonPool().invoke(task);
+        }else {
+            task.evaluate();
+        }
+        final Complex[][] seed = task.seed;
+
+        this.re  = new BigInteger[derivatives+1][];
+        this.im  = new BigInteger[derivatives+1][];
+        this.den = new BigInteger[derivatives+1];
+        for(int j = 0; j <= derivatives; j++) {
+            // The j-th derivative has degree d-j, so it only needs d-j+1 seeds
+            final int size = Math.max(deg-j, 0) + 1;
+
+            // Find the common denominator of the seeds
+            BigInteger den = BigInteger.ONE;
+            for(int i = 0; i < size; i++) {
+                den = lcm(den, seed[i][j].getReal().getDenominator());
+                den = lcm(den, seed[i][j].getImaginary().getDenominator());
+            }
+            final BigInteger[] re = new BigInteger[size];
+            final BigInteger[] im = new BigInteger[size];
+            for(int i = 0; i < size; i++) {
+                re[i] = scale(seed[i][j].getReal(), den);
+                im[i] = scale(seed[i][j].getImaginary(), den);
+            }
+            // Reduce the values in place to the differences at the first point
+            for(int k = 1; k < size; k++) {
+                for(int i = size-1; i >= k; i--) {
+                    re[i] = re[i].subtract(re[i-1]);
+                    im[i] = im[i].subtract(im[i-1]);
+                }
+            }
+            this.re[j]  = re;
+            this.im[j]  = im;
+            this.den[j] = den;
+        }
+    }
+
+    /**
+     * Constructs a new <code>ForwardDifference</code> at the same point and with the same
+     * distance between points as <code>other</code>.
+     *
+     * @param other the table to copy
+     */
+    public ForwardDifference(final ForwardDifference other) {
+        this.re  = new BigInteger[other.re.length][];
+        this.im  = new BigInteger[other.im.length][];
+        this.den = other.den.clone();
+        for(int j = 0; j < this.den.length; j++) {
+            this.re[j] = other.re[j].clone();
+            this.im[j] = other.im[j].clone();
+        }
+    }
+    
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Returns the value of the polynomial at the current point, then advances to the next point
+     *
+     * @return the value at the current point
+     */
+    public Complex next() {
+        final Complex res = this.current();
+        this.step();
+        return res;
+    }
+
+    /**
+     * Stores the value of the polynomial at the current point as doubles, then advances to the
+     * next point. The real part is stored in <code>out[0]</code>, and the imaginary part in
+     * <code>out[1]</code>.
+     *
+     * @param out an array of at least 2 values to hold the result
+     */
+    public void next(final double[] out) {
+        out[0] = Rational.doubleValue(this.re[0][0], this.den[0]);
+        out[1] = Rational.doubleValue(this.im[0][0], this.den[0]);
+        this.step();
+    }
+
+    /**
+     * Stores the values of the polynomial and its derivatives at the current point as doubles,
+     * then advances to the next point. The j-th derivative is stored at index <code>i</code> of
+     * <code>out[j]</code>, with the real part in <code>out[j][0]</code> and the imaginary part in
+     * <code>out[j][1]</code>. Derivatives without an output array are skipped.
+     *
+     * @param i the index to store the values at
+     * @param out a 2 dimensional array of real and imaginary values for each derivative
+     */
+    public void next(final int i, final double[][]... out) {
+        for(int j = 0; j < out.length && j < this.den.length; j++) {
+            if(out[j]==null) continue;
+            out[j][0][i] = Rational.doubleValue(this.re[j][0], this.den[j]);
+            out[j][1][i] = Rational.doubleValue(this.im[j][0], this.den[j]);
+        }
+        this.step();
+    }
+
+    /**
+     * Returns the value of the polynomial at the current point
+     *
+     * @return the value at the current point
+     */
+    public Complex current() {
+        return new Complex(new Rational(this.re[0][0], this.den[0]), new Rational(this.im[0][0], this.den[0]));
+    }
+
+    /**
+     * Advances to the next point, using only additions
+     */
+    public void step() {
+        for(int j = 0; j < this.den.length; j++) {
+            final BigInteger[] re = this.re[j];
+            final BigInteger[] im = this.im[j];
+            for(int k = 0; k < re.length-1; k++) {
+                re[k] = re[k].add(re[k+1]);
+                im[k] = im[k].add(im[k+1]);
+            }
+        }
+    }
+    
+    /**
+     * Doubles the distance between points, without moving the current point.
+     * <p>With the shift operator E = 1 + &Delta;, the differences for twice the distance are
+     * (E<sup>2</sup> - 1)<sup>k</sup> = &Delta;<sup>k</sup>(2 + &Delta;)<sup>k</sup>, so the new k-th
+     * difference is the sum of C(k,i) 2<sup>k-i</sup> &Delta;<sup>k+i</sup> over i. Every difference
+     * past the degree is 0, and the values stay integers over the same denominator.</p>
+     */
+    public void doubleStep() {
+        for(int j = 0; j < this.den.length; j++) {
+            final BigInteger[] re = this.re[j];
+            final BigInteger[] im = this.im[j];
+            final int size = re.length;
+            // The k-th difference only depends on the differences from k upwards
+            for(int k = 1; k < size; k++) {
+                BigInteger sumRe = BigInteger.ZERO;
+                BigInteger sumIm = BigInteger.ZERO;
+                BigInteger binomial = BigInteger.ONE; // C(k,i)
+                for(int i = 0; i <= k && k+i < size; i++) {
+                    final BigInteger c = binomial.shiftLeft(k-i);
+                    sumRe = sumRe.add(c.multiply(re[k+i]));
+                    sumIm = sumIm.add(c.multiply(im[k+i]));
+                    binomial = binomial.multiply(BigInteger.valueOf(k-i)).divide(BigInteger.valueOf(i+1));
+                }
+                re[k] = sumRe;
+                im[k] = sumIm;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Fork/join task that evaluates the seeds with indices <code>from</code> (inclusive) to
+     * <code>to</code> (exclusive), each at its own exact point <i>start + i*h</i>.
+     */
+    private static class SeedTask extends RecursiveAction {
+    
+        private static final long serialVersionUID = 1L;
+    
+        private final Poly        p;
+        private final int         derivatives;
+        private final Rational    start;
+        private final Rational    h;
+        private final Complex[][] seed;
+        private final int         from;
+        private final int         to;
+    
+        public SeedTask(final Poly p, final int derivatives, final Rational start, final Rational h,
+                        final Complex[][] seed, final int from, final int to) {
+            this.p           = p;
+            this.derivatives = derivatives;
+            this.start       = start;
+            this.h           = h;
+            this.seed        = seed;
+            this.from        = from;
+            this.to          = to;
+        }
+    
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            if(this.to-this.from > 1) {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(new SeedTask(p, derivatives, start, h, seed, this.from, mid),
+                          new SeedTask(p, derivatives, start, h, seed, mid, this.to));
+            }else {
+                this.evaluate();
+            }
+        }
+    
+        /**
+         * Evaluates the seeds of this task on the current thread
+         */
+        public void evaluate() {
+            for(int i = this.from; i < this.to; i++) {
+                final Rational x = this.start.add(this.h.mul(new Rational(i)));
+                this.seed[i] = this.p.evalAt(new Complex(x), this.derivatives);
+            }
+        }
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Returns the numerator of <code>r</code> when written over the denominator <code>den</code>,
+     * which must be a multiple of the denominator of r.
+     */
+    private static BigInteger scale(final Rational r, final BigInteger den) {
+        return r.getNumerator().multiply(den.divide(r.getDenominator()));
+    }
+
+    /**
+     * Calculates and returns the least common multiple of two positive values
+     */
+    private static BigInteger lcm(final BigInteger a, final BigInteger b) {
+        if(a.equals(b) || b.equals(BigInteger.ONE)) return a;
+        return a.divide(a.gcd(b)).multiply(b);
+    }
+}
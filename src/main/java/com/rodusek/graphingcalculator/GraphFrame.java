@@ -31,9 +31,17 @@ public class GraphFrame extends JFrame{
     private final JCheckBoxMenuItem    viewMenuFunc1    = new JCheckBoxMenuItem("F( x )", true);
     private final JCheckBoxMenuItem    viewMenuFunc2    = new JCheckBoxMenuItem("F'( x )", true);
     private final JCheckBoxMenuItem    viewMenuFunc3    = new JCheckBoxMenuItem("F''( x )", true);
+    private final JCheckBoxMenuItem    viewMenuExact    = new JCheckBoxMenuItem("Exact Arithmetic", false);
+    private final JCheckBoxMenuItem    viewMenuParallel = new JCheckBoxMenuItem("Parallel Sampling", true);
+    private final JCheckBoxMenuItem    viewMenuAdaptive = new JCheckBoxMenuItem("Adaptive Sampling", false);
+    private final JCheckBoxMenuItem    viewMenuProgressive = new JCheckBoxMenuItem("Progressive Rendering", true);
+    private final JCheckBoxMenuItem    viewMenuOversample  = new JCheckBoxMenuItem("Oversampling (16x)", false);
+    private final JCheckBoxMenuItem    viewMenuSoftware    = new JCheckBoxMenuItem("Software Line Rendering", false);
     private final JMenu                helpMenu        = new JMenu("Help");
     private final JMenuItem            helpMenuHelp    = new JMenuItem("Command Help");
     
+    private final int       oversampling = 16; // samples per pixel column when oversampling
+    
     private final String    helpTitle = "Command Help";
     private final String    helpString = "This graphing calculator contains full support for both real AND complex rational numbers.\n" +
              "In order to graph complex numbers, simply add values that have 'i' to the equation. \n\n" +
@@ -85,6 +93,36 @@ public class GraphFrame extends JFrame{
         viewMenuFunc1.addItemListener(new ViewListener(CalculatorModel.KEY_POLYNOMIAL));
         viewMenuFunc2.addItemListener(new ViewListener(CalculatorModel.KEY_FIRST_DERIVATIVE));
         viewMenuFunc3.addItemListener(new ViewListener(CalculatorModel.KEY_SECOND_DERIVATIVE));
+        viewMenuExact.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setExact(evt.getStateChange()==ItemEvent.SELECTED);
+                                        }});
+        viewMenuParallel.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setParallel(evt.getStateChange()==ItemEvent.SELECTED);
+                                        }});
+        viewMenuAdaptive.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setAdaptive(evt.getStateChange()==ItemEvent.SELECTED);
+                                        }});
+        viewMenuProgressive.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setProgressive(evt.getStateChange()==ItemEvent.SELECTED);
+                                        }});
+        viewMenuOversample.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setOversampling(evt.getStateChange()==ItemEvent.SELECTED ? oversampling : 1);
+                                        }});
+        viewMenuSoftware.addItemListener(new ItemListener() {
+                                        @Override
+                                        public void itemStateChanged(ItemEvent evt) {
+                                            GraphFrame.this.model.setSoftwareRendering(evt.getStateChange()==ItemEvent.SELECTED);
+                                        }});
         
         // Create the help dialog
         helpMenu.setMnemonic(KeyEvent.VK_H);
@@ -96,6 +134,13 @@ public class GraphFrame extends JFrame{
         viewMenu.add(viewMenuFunc1);
         viewMenu.add(viewMenuFunc2);
         viewMenu.add(viewMenuFunc3);
+        viewMenu.addSeparator();
+        viewMenu.add(viewMenuExact);
+        viewMenu.add(viewMenuParallel);
+        viewMenu.add(viewMenuAdaptive);
+        viewMenu.add(viewMenuProgressive);
+        viewMenu.add(viewMenuOversample);
+        viewMenu.add(viewMenuSoftware);
         helpMenu.add(helpMenuHelp);
         
         menuBar.add(viewMenu);
@@ -1,13 +1,17 @@
 package com.rodusek.graphingcalculator;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
 
 import javax.swing.JComponent;
 
@@ -27,6 +31,8 @@ public class GraphPanel extends JComponent{
     private final int Y_OFFSET = 20;
     private final int TICK_WIDTH = 5;
     private final int TICK_DISTANCE = 75;
+    private final String COMPUTING_TEXT = "Computing...";
+    private final String REFINING_TEXT  = "Refining...";
         
     private int width  = this.getWidth()-2*X_OFFSET;
     private int height = this.getHeight()-2*Y_OFFSET;
@@ -34,6 +40,26 @@ public class GraphPanel extends JComponent{
     private double yScale = 1;
     private double xScale = 1;
     
+    private double[] xPixels = new double[0]; // pixel coordinates of the curve being plotted, reused between frames
+    private double[] yPixels = new double[0];
+    private int[]    xPoints = new int[0];    // clipped pixel coordinates of the run being drawn
+    private int[]    yPoints = new int[0];
+    private final double[] clipped = new double[4]; // the last segment clipped, as x0, y0, x1, y1
+    private final double[] clipT   = new double[2]; // the parameters of the visible part of that segment
+    
+    // Software rendering of the curves, into a copy of the axis layer
+    private final WuRenderer renderer = new WuRenderer();
+    private boolean          software = false; // whether this frame is drawn with the renderer
+    
+    // Background and axis, drawn once and blitted until the inputs below change
+    private BufferedImage axisLayer   = null;
+    private Font          layerFont   = null;
+    private double        layerScaleX = 0;
+    private double        layerScaleY = 0;
+    private double[]      layerBounds = new double[4]; // xMin, xMax, yMin and yMax of the layer
+    private Rational      layerStart  = null;
+    private Rational      layerEnd    = null;
+    
     private double yMin = 0;
     private double yMax = 0;
     private double xMin = 0;
@@ -47,6 +73,11 @@ public class GraphPanel extends JComponent{
     private static final Color IMAGINARY_FUNC_2 = new Color(0x008800);
     private static final Color IMAGINARY_FUNC_3 = new Color(0x000088);
     
+    // Pixel coordinates are clamped to this distance from the origin so they stay finite
+    private static final double COORDINATE_LIMIT = 1e9;
+    // Distance the curves may stray outside the plot, so antialiasing at the edges isn't cut off
+    private static final int    CLIP_MARGIN      = 1;
+    
     
     // ---------------------------------------------------------------------------------
     
@@ -85,16 +116,25 @@ public class GraphPanel extends JComponent{
         super.paintComponents(g);
         
         final Graphics2D g2d = (Graphics2D) g;
+        int text_width = 0;
         
         this.width  = this.getWidth()-2*X_OFFSET;
         this.height = this.getHeight()-2*Y_OFFSET;
-        this.model.setInterval(this.width);
-        this.model.calculatePolynomialCoordinates();
+        // Resizing requests new coordinates in the background; until they are ready
+        // the last completed result is drawn
+        this.model.setViewport(this.width, this.height);
+        
+        // A high degree polynomial prints to millions of characters, which are slow to lay out
+        // even though only the start of them fits, so the rest is left off
+        final int length = this.getWidth()/2;
+        final String[] label = new String[3];
+        label[0] = fit(model.getLabel(CalculatorModel.KEY_POLYNOMIAL), length);
+        label[1] = fit(model.getLabel(CalculatorModel.KEY_FIRST_DERIVATIVE), length);
+        label[2] = fit(model.getLabel(CalculatorModel.KEY_SECOND_DERIVATIVE), length);
         
-        final Poly[] polynomial = new Poly[3];
-        polynomial[0] = model.getPoly(CalculatorModel.KEY_POLYNOMIAL);
-        polynomial[1] = model.getPoly(CalculatorModel.KEY_FIRST_DERIVATIVE);
-        polynomial[2] = model.getPoly(CalculatorModel.KEY_SECOND_DERIVATIVE);
+        final double[] x1 = model.getXCoordinates(CalculatorModel.KEY_POLYNOMIAL);
+        final double[] x2 = model.getXCoordinates(CalculatorModel.KEY_FIRST_DERIVATIVE);
+        final double[] x3 = model.getXCoordinates(CalculatorModel.KEY_SECOND_DERIVATIVE);
         
         final double[][] y1 = model.getYCoordinates(CalculatorModel.KEY_POLYNOMIAL);
         final double[][] y2 = model.getYCoordinates(CalculatorModel.KEY_FIRST_DERIVATIVE);
@@ -112,6 +152,13 @@ public class GraphPanel extends JComponent{
 
         this.yMin = model.getYMin();
         this.yMax = model.getYMax();
+        // A flat range, such as a constant f'' shown on its own, has no height to scale to,
+        // so it is padded to center the line
+        if(this.yMin == this.yMax) {
+            final double pad = Math.max(1, Math.abs(this.yMax));
+            this.yMin -= pad;
+            this.yMax += pad;
+        }
         
         this.xMin = model.getXMin();
         this.xMax = model.getXMax();
@@ -125,71 +172,304 @@ public class GraphPanel extends JComponent{
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,        RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         
-        // Fill the frame white
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, this.getWidth(), this.getHeight());
-        
-        // Draw axis and plot the polynomial and it's derivative
-        g2d.setColor(Color.GRAY);
-        this.drawAxis(g2d);
+        // Draw the background and axis, then plot the polynomial and it's derivatives over them.
+        // The software renderer draws them all into a copy of the layer, which is then blitted
+        this.software = model.isSoftwareRendering();
+        this.updateAxisLayer(g2d);
+        if(this.software) {
+            this.renderer.begin(this.axisLayer, this.layerScaleX, this.layerScaleY);
+        }else {
+            g2d.drawImage(this.axisLayer, 0, 0, this.getWidth(), this.getHeight(), null);
+        }
         
         // Graph function 1
         if(model.getVisibility(CalculatorModel.KEY_POLYNOMIAL)) {
             g2d.setColor(REAL_FUNC_1);
-            this.plotPoly(g2d, ry1);
-            g2d.drawString("f(x) = "+ polynomial[0].toString() , X_OFFSET, Y_OFFSET+height-30);
+            this.plotPoly(g2d, x1, ry1);
             if(model.getVisibility(CalculatorModel.KEY_COMPLEX_VISIBLE)){
                 g2d.setColor(IMAGINARY_FUNC_1);
-                this.plotPoly(g2d, iy1);
+                this.plotPoly(g2d, x1, iy1);
             }
         }
         
         // Graph function 2
         if(model.getVisibility(CalculatorModel.KEY_FIRST_DERIVATIVE)) {
             g2d.setColor(REAL_FUNC_2);
-            this.plotPoly(g2d, ry2);
-            g2d.drawString("f'(x) = "+ polynomial[1].toString() , X_OFFSET, Y_OFFSET+height-15);
+            this.plotPoly(g2d, x2, ry2);
             if(model.getVisibility(CalculatorModel.KEY_COMPLEX_VISIBLE)){
                 g2d.setColor(IMAGINARY_FUNC_2);
-                this.plotPoly(g2d, iy2);
+                this.plotPoly(g2d, x2, iy2);
             }
         }
         
         // Graph function 3
         if(model.getVisibility(CalculatorModel.KEY_SECOND_DERIVATIVE)) {
             g2d.setColor(REAL_FUNC_3);
-            this.plotPoly(g2d, ry3);
-            g2d.drawString("f''(x) = "+ polynomial[2].toString() , X_OFFSET, Y_OFFSET+height);
+            this.plotPoly(g2d, x3, ry3);
             if(model.getVisibility(CalculatorModel.KEY_COMPLEX_VISIBLE)){
                 g2d.setColor(IMAGINARY_FUNC_3);
-                this.plotPoly(g2d, iy3);
+                this.plotPoly(g2d, x3, iy3);
             }
         }
+        
+        if(this.software) {
+            g2d.drawImage(this.renderer.render(model.isParallel()), 0, 0, this.getWidth(), this.getHeight(), null);
+        }
+        
+        // Label the functions over the curves
+        if(model.getVisibility(CalculatorModel.KEY_POLYNOMIAL)) {
+            g2d.setColor(REAL_FUNC_1);
+            g2d.drawString("f(x) = "+ label[0] , X_OFFSET, Y_OFFSET+height-30);
+        }
+        if(model.getVisibility(CalculatorModel.KEY_FIRST_DERIVATIVE)) {
+            g2d.setColor(REAL_FUNC_2);
+            g2d.drawString("f'(x) = "+ label[1] , X_OFFSET, Y_OFFSET+height-15);
+        }
+        if(model.getVisibility(CalculatorModel.KEY_SECOND_DERIVATIVE)) {
+            g2d.setColor(REAL_FUNC_3);
+            g2d.drawString("f''(x) = "+ label[2] , X_OFFSET, Y_OFFSET+height);
+        }
+    
+        // Indicate that the plot is out of date
+        if(model.isComputing()) {
+            // A coarse pass of progressive sampling is being refined
+            final String text = model.getStride()>1 ? REFINING_TEXT : COMPUTING_TEXT;
+            g2d.setColor(Color.GRAY);
+            text_width = (int) g2d.getFontMetrics().getStringBounds(text, g2d).getWidth();
+            g2d.drawString(text, X_OFFSET+width-text_width, Y_OFFSET);
+        }
     }
     
     // ---------------------------------------------------------------------------------
     
     /**
-     * Plots the polynomial in the given viewport
+     * Returns the start of a label, cut to at most <code>length</code> characters. No character
+     * is narrower than two pixels, so half the width of the panel in characters covers it.
+     * @param label the text of the polynomial
+     * @param length the most characters to keep
+     * @return the label, or its first <code>length</code> characters
+     */
+    private static String fit(String label, int length) {
+        return label.length() <= length ? label : label.substring(0, length);
+    }
+    
+    /**
+     * Plots the polynomial in the given viewport as polylines through its points.
+     * The points are converted to pixels in one loop into arrays that are kept between
+     * frames, then oversampled points are decimated to at most four per pixel column, and
+     * each segment is clipped to the plot. Only the visible runs of the curve are drawn, 
+     * so drawing a curve costs the same however far it leaves the plot.
      * @param g2d
-     * @param polynomial
+     * @param xCoords the x-coordinates of the points, which may be unevenly spaced
+     * @param yCoords the y-coordinates of the points
      */
-    private void plotPoly(Graphics2D g2d, double[] yCoords) {
-        int x1, x2, y1, y2;
-        int n = this.width;
-        x1 = 0;
-        y1 = (int) ((yMax-yCoords[0])*yScale - this.height);
+    private void plotPoly(Graphics2D g2d, double[] xCoords, double[] yCoords) {
+        final int n = yCoords.length;
+        if(this.xPixels.length < n) {
+            this.xPixels = new double[n];
+            this.yPixels = new double[n];
+            this.xPoints = new int[n+1];
+            this.yPoints = new int[n+1];
+        }
+        final double[] xd = this.xPixels;
+        final double[] yd = this.yPixels;
+        
+        // Infinite values are clamped far outside the plot, so that they can still be clipped
+        final double xa = xScale;
+        final double xb = X_OFFSET - xMin*xScale;
+        final double ya = -yScale;
+        final double yb = Y_OFFSET + yMax*yScale;
+        for(int i=0; i<n; i++) {
+            xd[i] = xa*xCoords[i] + xb;
+            yd[i] = Math.min(Math.max(ya*yCoords[i] + yb, -COORDINATE_LIMIT), COORDINATE_LIMIT);
+        }
+        this.drawClipped(g2d, xd, yd, decimate(xd, yd, n));
+    }
+    
+    /**
+     * Draws a polyline clipped to the plot. Consecutive visible segments are joined into
+     * runs, and each run is drawn with a single call, or each segment is recorded by the
+     * software renderer.
+     * @param g2d
+     * @param xd the x-coordinates in pixels
+     * @param yd the y-coordinates in pixels
+     * @param n the number of points
+     */
+    private void drawClipped(Graphics2D g2d, double[] xd, double[] yd, int n) {
+        final int[]    xp = this.xPoints;
+        final int[]    yp = this.yPoints;
+        final double[] c  = this.clipped;
+        int k = 0; // points in the current run
         for(int i=1; i<n; i++) {
-            x2 = i;
-            y2 = (int) ((yMax-yCoords[i])*yScale - this.height);
-            g2d.drawLine(x1+X_OFFSET, height+y1+Y_OFFSET, 
-                         x2+X_OFFSET, height+y2+Y_OFFSET);
+            if(!this.clip(xd[i-1], yd[i-1], xd[i], yd[i])) {
+                if(k > 0) g2d.drawPolyline(xp, yp, k);
+                k = 0;
+                continue;
+            }
+            // The software renderer draws the visible part of each segment at subpixel precision
+            if(this.software) {
+                this.renderer.segment(c[0], c[1], c[2], c[3], g2d.getColor());
+                continue;
+            }
+            // The clipped coordinates are positive, so truncating them rounds to the nearest pixel
+            final int x0 = (int) (c[0] + 0.5), y0 = (int) (c[1] + 0.5);
+            final int x1 = (int) (c[2] + 0.5), y1 = (int) (c[3] + 0.5);
+            // A segment that was clipped at its start begins a new run
+            if(k > 0 && (xp[k-1] != x0 || yp[k-1] != y0)) {
+                g2d.drawPolyline(xp, yp, k);
+                k = 0;
+            }
+            if(k == 0) {
+                xp[k] = x0; yp[k++] = y0;
+            }
+            // Points that round to the same pixel as the last add nothing to the run
+            if(xp[k-1] != x1 || yp[k-1] != y1) {
+                xp[k] = x1; yp[k++] = y1;
+            }
+        }
+        if(k > 0) g2d.drawPolyline(xp, yp, k);
+    }
+    
+    /**
+     * Clips the segment from (x0, y0) to (x1, y1) to the plot by the Liang-Barsky algorithm,
+     * storing the visible part in <code>clipped</code>
+     * @return true if part of the segment is visible, false otherwise
+     */
+    private boolean clip(double x0, double y0, double x1, double y1) {
+        if(Double.isNaN(x0 + y0 + x1 + y1)) return false;
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        final double[] t = this.clipT;
+        t[0] = 0;
+        t[1] = 1;
+        if(!clipEdge(-dx, x0 - (X_OFFSET - CLIP_MARGIN),          t) ||
+           !clipEdge( dx, (X_OFFSET + width + CLIP_MARGIN) - x0,  t) ||
+           !clipEdge(-dy, y0 - (Y_OFFSET - CLIP_MARGIN),          t) ||
+           !clipEdge( dy, (Y_OFFSET + height + CLIP_MARGIN) - y0, t)) {
+            return false;
+        }
+        this.clipped[0] = x0 + t[0]*dx;
+        this.clipped[1] = y0 + t[0]*dy;
+        this.clipped[2] = x0 + t[1]*dx;
+        this.clipped[3] = y0 + t[1]*dy;
+        return true;
+    }
+    
+    /**
+     * Narrows the visible parameters of a segment to one edge of the plot, where the
+     * segment is inside the edge while p*t is at most q
+     * @return false if the segment is entirely outside the edge
+     */
+    private static boolean clipEdge(double p, double q, double[] t) {
+        if(p == 0) return q >= 0;
+        final double r = q / p;
+        if(p < 0) {
+            if(r > t[1]) return false;
+            if(r > t[0]) t[0] = r;
+        }else {
+            if(r < t[0]) return false;
+            if(r < t[1]) t[1] = r;
+        }
+        return true;
+    }
+    
+    /**
+     * Reduces each pixel column of a polyline to its first, last, lowest and highest points,
+     * in their original order (M4 aggregation). A polyline through those points covers the
+     * same pixels as one through every point, however many points fall in each column.
+     * <p>The points are decimated in place in one pass, which is safe since a column never
+     * keeps more points than it had.</p>
+     * 
+     * @param xd the x-coordinates in pixels, in ascending order
+     * @param yd the y-coordinates in pixels
+     * @param n the number of points
+     * @return the number of points kept, at the start of the arrays
+     */
+    private static int decimate(final double[] xd, final double[] yd, final int n) {
+        int m = 0;
+        int i = 0;
+        while(i < n) {
+            final int column = (int) Math.floor(xd[i]);
+            final int start  = i;
+            // Find the extremes of the column, and where they occur
+            int minAt = i;
+            int maxAt = i;
+            for(i++; i < n && (int) Math.floor(xd[i]) == column; i++) {
+                if(yd[i] < yd[minAt]) minAt = i;
+                if(yd[i] > yd[maxAt]) maxAt = i;
+            }
+            final int end = i-1;
+            final int lo  = Math.min(minAt, maxAt);
+            final int hi  = Math.max(minAt, maxAt);
             
-            y1 = y2;
-            x1 = x2;
+            // Keep the distinct points in order of index; each is read before it can be overwritten
+            m = keep(xd, yd, start, m);
+            if(lo != start && lo != end) m = keep(xd, yd, lo, m);
+            if(hi != lo && hi != end)    m = keep(xd, yd, hi, m);
+            if(end != start)             m = keep(xd, yd, end, m);
+        }
+        return m;
+    }
+    
+    /**
+     * Copies the point at index i to index m
+     * @return the index after m
+     */
+    private static int keep(final double[] xd, final double[] yd, final int i, final int m) {
+        xd[m] = xd[i];
+        yd[m] = yd[i];
+        return m + 1;
+    }
+    
+    /**
+     * Draws the white background and the axis, with their ticks and labels, into the axis layer.
+     * The layer is kept, and only drawn again when the size of the panel, the boundaries, the
+     * range or the font change; otherwise it is just blitted.
+     * @param g2d
+     */
+    private void updateAxisLayer(Graphics2D g2d) {
+        // The layer is drawn at the scale of the device, so it stays sharp on high-density screens
+        final AffineTransform transform = g2d.getTransform();
+        final double sx = transform.getScaleX();
+        final double sy = transform.getScaleY();
+        final int    w  = Math.max(1, (int) Math.ceil(this.getWidth()*sx));
+        final int    h  = Math.max(1, (int) Math.ceil(this.getHeight()*sy));
+        final double[] bounds = {xMin, xMax, yMin, yMax};
+        
+        if(this.axisLayer == null || this.axisLayer.getWidth() != w || this.axisLayer.getHeight() != h
+           || this.layerScaleX != sx || this.layerScaleY != sy || !Arrays.equals(this.layerBounds, bounds)
+           || !g2d.getFont().equals(this.layerFont)
+           || !this.model.getStart().equals(this.layerStart) || !this.model.getEnd().equals(this.layerEnd)) {
+            if(this.axisLayer == null || this.axisLayer.getWidth() != w || this.axisLayer.getHeight() != h) {
+                this.axisLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            }
+            final Graphics2D layer = this.axisLayer.createGraphics();
+            try {
+                layer.scale(sx, sy);
+                layer.setFont(g2d.getFont());
+                layer.setRenderingHint(RenderingHints.KEY_ANTIALIASING,      RenderingHints.VALUE_ANTIALIAS_ON);
+                layer.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                
+                // Fill the frame white
+                layer.setColor(Color.WHITE);
+                layer.fillRect(0, 0, this.getWidth(), this.getHeight());
+                
+                layer.setColor(Color.GRAY);
+                this.drawAxis(layer);
+            } finally {
+                layer.dispose();
+            }
+            // Drawing the axis may reset the y-boundaries, so they are restored for the plots
+            yMin = bounds[2];
+            yMax = bounds[3];
+            this.layerBounds = bounds;
+            this.layerFont   = g2d.getFont();
+            this.layerScaleX = sx;
+            this.layerScaleY = sy;
+            this.layerStart  = this.model.getStart();
+            this.layerEnd    = this.model.getEnd();
         }
     }
-
     
     /**
      * Draws the axis of the graph based on the selected viewport
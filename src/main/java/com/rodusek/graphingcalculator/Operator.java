@@ -33,6 +33,16 @@ public class Operator {
         precedents = Collections.unmodifiableMap(map);
     }
     
+    // Shared instances of each operator, so that parsing doesn't construct one per token
+    public static final Operator LEFT_PARENTHESIS  = new Operator("(");
+    public static final Operator RIGHT_PARENTHESIS = new Operator(")");
+    public static final Operator ADD               = new Operator("+");
+    public static final Operator SUBTRACT          = new Operator("-");
+    public static final Operator MULTIPLY          = new Operator("*");
+    public static final Operator DIVIDE            = new Operator("/");
+    public static final Operator MODULO            = new Operator("%");
+    public static final Operator EXPONENT          = new Operator("^");
+    
     // ---------------------------------------------------------------
     
     /**
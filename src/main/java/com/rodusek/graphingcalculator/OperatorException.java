@@ -14,6 +14,8 @@ package com.rodusek.graphingcalculator;
 @SuppressWarnings("serial")
 public class OperatorException extends RuntimeException {
     
+    private final int position; // index of the character where the error was found, or -1
+    
     /**
      * The enumerated error flags and matching strings.
      */
@@ -45,6 +47,25 @@ public class OperatorException extends RuntimeException {
      */
     public OperatorException(Flags flag) {
         super(flag.getMessage());
+        this.position = -1;
+    }
+    
+    /**
+     * Constructs the error from the specified flag, found at an index of the parsed string
+     * @param flag <code>Flags</code> constant signaling specific exception.
+     * @param position the index of the character where the error was found
+     */
+    public OperatorException(Flags flag, int position) {
+        super(flag.getMessage() + " (at character " + (position + 1) + ")");
+        this.position = position;
+    }
+    
+    /**
+     * Returns the index of the character of the parsed string where the error was found
+     * @return the index, or -1 if the error isn't tied to a position
+     */
+    public int getPosition() {
+        return this.position;
     }
 
 }
@@ -2,8 +2,9 @@ package com.rodusek.graphingcalculator;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.EmptyStackException;
-import java.util.StringTokenizer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * The <code>Poly</code> class represents Polynomial functions which use <code>Rational</code> coefficients.
@@ -13,6 +14,21 @@ import java.util.StringTokenizer;
  * There are constructors that take variable numbers of <code>Rational</code> objects, an integer and an array, 
  * or a string parsing one that can take polynomial written in regular mathematical notation.
  * 
+ * <p>Internally the coefficients are held as Gaussian integer numerators over a single shared 
+ * denominator, so that arithmetic is done on plain integers with no gcd normalization. The 
+ * coefficients are only reduced to lowest terms as <code>Complex</code> values when they are 
+ * observed, such as when the Poly is printed.</p>
+ * 
+ * <p>A Poly of high degree with few nonzero terms, such as x<sup>100000</sup>+1, is held in sparse form 
+ * instead: the exponents of its nonzero terms in ascending order, with a numerator for each term. 
+ * The form is picked automatically by the density of the terms, and the operations on it take time 
+ * in the number of terms rather than the degree.</p>
+ * 
+ * <p>A Poly parsed from a string whose expression is cheaper to evaluate than its expansion, such as 
+ * (x+3i)<sup>2000</sup>, is held lazily as that <code>Expression</code>. It is evaluated and 
+ * differentiated without being expanded, and the coefficients are only expanded, once, when they 
+ * are observed.</p>
+ * 
  * @author Matthew Rodusek
  * @version 1.0, 2013-10-29
  * @since 1.0
@@ -21,18 +37,29 @@ public class Poly implements Arithmetic<Poly> {
     
     // Instance Variables
     private int         deg;            // for the degree
-    private Complex [] coeffs;         // for the array of coefficients
+    private int[]       exps;           // the exponent of each term in sparse form, or null in dense form
+    private BigInteger[] re;            // re[i]/den is the real part of the i-th coefficient (or term)
+    private BigInteger[] im;            // im[i]/den is the imaginary part, or null if every coefficient is real
+    private BigInteger  den;            // the shared positive denominator
+    private volatile Complex[] coeffs;  // the coefficients in lowest terms, built when first observed
+    private Expression  expr;           // the unexpanded expression of a lazy Poly, or null
+    private volatile Poly expansion;    // the expansion of the expression, built when first observed
     private String        variable = "x";
     
+    private static final int SPARSE_MIN_DEGREE = 32; // Lowest degree to hold in sparse form
+    private static final int SPARSE_DENSITY    = 8;  // Coefficients per nonzero term to hold in sparse form
+    
+    private static final ThreadLocal<PolyParser> PARSER = ThreadLocal.withInitial(PolyParser::new); // Parser reused by each thread
+    
     // ---------------------------------------------------------------------------------
     
     /**
      * Initializes a newly created <code>Poly</code> so that it represents the number 0.
      */
     public Poly() {
-        this.deg         = 0;
-        this.coeffs     = new Complex[1];
-        this.coeffs[0]     = new Complex(Rational.ZERO);
+        this.deg = 0;
+        this.re  = new BigInteger[] { BigInteger.ZERO };
+        this.den = BigInteger.ONE;
     }
         
     /**
@@ -42,9 +69,7 @@ public class Poly implements Arithmetic<Poly> {
      * @param coeffs series of Rational arguments
      */
     public Poly(final Complex ...coeffs) {
-        this.deg = coeffs.length - 1;
-        this.coeffs = coeffs;
-        this.reducePoly();
+        this.setCoefficients(coeffs);
     }
     
     /**
@@ -57,15 +82,61 @@ public class Poly implements Arithmetic<Poly> {
      */
     public Poly(final int deg, final Complex [] coeffs) throws IllegalArgumentException{
         if(deg + 1 == coeffs.length) {
-            this.deg     = deg;
-            this.coeffs = coeffs;
-            // Reduce the polynomial to minimal form
-            this.reducePoly();
+            this.setCoefficients(coeffs);
         }else {
             throw new IllegalArgumentException();
         }
     }
     
+    /**
+     * Constructs a new <code>Poly</code> from Gaussian integer numerators over a shared denominator.
+     * The arrays are used directly, so they must not be modified afterwards.
+     * 
+     * @param re the real parts of the numerators
+     * @param im the imaginary parts of the numerators, or null if they are all zero
+     * @param den the shared positive denominator
+     */
+    private Poly(final BigInteger[] re, final BigInteger[] im, final BigInteger den) {
+        this.set(re, im, den);
+    }
+    
+    /**
+     * Constructs a new <code>Poly</code> from the Gaussian integer numerators of its terms over 
+     * a shared denominator. The arrays are used directly, so they must not be modified afterwards.
+     * 
+     * @param exps the exponents of the terms in ascending order
+     * @param re the real parts of the numerators
+     * @param im the imaginary parts of the numerators, or null if they are all zero
+     * @param den the shared positive denominator
+     */
+    private Poly(final int[] exps, final BigInteger[] re, final BigInteger[] im, final BigInteger den) {
+        this.setSparse(exps, re, im, den);
+    }
+    
+    /**
+     * Constructs a new lazy <code>Poly</code> that holds an unexpanded expression.
+     * 
+     * @param expr the expression of the polynomial
+     */
+    private Poly(final Expression expr) {
+        this.expr = expr;
+    }
+    
+    /**
+     * Returns the <code>Poly</code> of a parsed expression. A compact expression is kept 
+     * for evaluation, and the rest are taken as their expansion.
+     * 
+     * @param expr the parsed expression
+     * @param variable the variable character to be used
+     * @return the polynomial
+     */
+    static Poly valueOf(final Expression expr, final String variable) {
+        // The expansion may be shared with the expression, so it is copied before the variable is set
+        final Poly res = expr.isCompact() ? new Poly(expr) : new Poly(expr.expand());
+        res.variable = variable;
+        return res;
+    }
+    
     /**
      * Constructs a new <code>Poly</code> by parsing a string.
      * The string must be entered in the form of a mathematical equation,
@@ -80,112 +151,7 @@ public class Poly implements Arithmetic<Poly> {
      * @since 2.0
      */
     public Poly(final String line, final String variable) throws OperatorException, PolyException{
-        if(variable.length()>1)throw new PolyException(PolyException.Flags.BAD_VARIABLE);
-        this.variable = variable;
-        
-        final Stack<Operator> operator = new Stack<Operator>();
-        final Stack<Poly>     operand  = new Stack<Poly>();
-        final Poly               result;
-        boolean               lastVar  = false;    
-        
-        // The delimiters used by the tokenizer.
-        final String delimiters = variable+"i+-*/^() ";
-        final StringTokenizer input = new StringTokenizer(line, delimiters, true);
-        String token = null;
-        
-        // ---------------------------------------------------------------------------------
-        
-        // Check to see if the first value is negative
-        if (line.startsWith("-")) {
-            // Read the first operand as a negative number.
-            token = input.nextToken();
-                
-            final Poly p = new Poly(Complex.NEG_ONE);
-            operand.push(p);
-            operator.push(new Operator("*"));
-        }
-        
-        // ---------------------------------------------------------------------------------
-        
-        // Parse the remaining input
-        while (input.hasMoreTokens()) {
-            token = input.nextToken();
-            // Skip spaces
-            if(token.equals(" ")) {
-                continue;
-            }
-            // If the value is a variable, create a new poly equal to x
-            else if(token.equals(this.variable)) {
-                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND);
-                operand.push(new Poly(Complex.ZERO, Complex.ONE));
-                lastVar = true;
-            // If the value is imaginary, create a new poly equal to i
-            }else if(token.equals("i")){
-                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND);
-                operand.push(new Poly(new Complex(Rational.ZERO, Rational.ONE)));
-                lastVar = true;
-            }
-            // If the value is an operator
-            else if(Operator.isOperator(token)) {
-                // Always push left brackets down
-                if(token.equals("(")) {
-                    if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND);
-                    lastVar = false;
-                    operator.push(new Operator(token));
-                }
-                // If right bracket, pop and perform operations until left bracket is met
-                else if(token.equals(")")) {
-                    while (!operator.isEmpty() && !operator.peek().toString().equals("(")) {
-                        try {
-                            operate(operator, operand);
-                        } catch (final Exception e) {
-                            throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR);
-                        }
-                    }
-                    if(operator.isEmpty()) {
-                        throw new OperatorException(OperatorException.Flags.NO_LEFT_PARENTHESIS);
-                    }
-                    operator.pop();
-                }
-                // Otherwise assume it's a new operator and push it down
-                else {
-                    if(!lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR);
-                    
-                    Operator op = new Operator(token);
-                    while(!operator.isEmpty() && op.precedes(operator.peek())) {
-                        operate(operator, operand);
-                    }
-                    operator.push(op);
-                    lastVar = false;
-                }
-            }
-            // Assume remaining values must be numeric input
-            else {
-                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND);
-                
-                operand.push(new Poly(new Complex(token)));
-                lastVar = true;
-            }
-        }
-        
-        // ---------------------------------------------------------------------------------
-        
-        while (!operator.isEmpty()) {
-            try {
-                operate(operator, operand);
-            } catch (final EmptyStackException e) {
-                throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR);
-            }
-        }
-        if(operand.isEmpty()) 
-            throw new PolyException(PolyException.Flags.NO_INPUT);
-        result = operand.pop();
-        
-        if(!operand.isEmpty()) 
-            throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR);
-        
-        this.coeffs = result.coeffs;
-        this.deg    = result.deg;
+        this(PARSER.get().parse(line, variable));
     }
 
     /**
@@ -212,11 +178,17 @@ public class Poly implements Arithmetic<Poly> {
      * @since 1.0
      */
     public Poly(final Poly other){
-        this.deg     = other.deg;
-        this.coeffs = new Complex[other.coeffs.length];
-        for(int i = 0; i <= this.deg; i++) {
-            this.coeffs[i] = new Complex(other.coeffs[i]);
-        }
+        this.deg      = other.deg;
+        this.exps     = other.exps;
+        this.re       = other.re;
+        this.im       = other.im;
+        this.den      = other.den;
+        this.coeffs   = other.coeffs;
+        this.variable = other.variable;
+        this.expr     = other.expr;
+        // The expansion holds the variable, so it is copied rather than shared
+        final Poly expansion = other.expansion;
+        this.expansion = expansion == null ? null : new Poly(expansion);
     }
     
     // ---------------------------------------------------------------------------------
@@ -228,24 +200,7 @@ public class Poly implements Arithmetic<Poly> {
      */
     @Override
     public Poly add(final Poly other) {
-        // Variables
-        Poly res = null;
-        Complex [] high = this.coeffs.length >  other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] low     = this.coeffs.length <= other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] coeffsRes = new Complex[high.length]; // Create array of Rational coefficients
-        
-        // Add the values of the same degree together
-        for(int i = 0; i < low.length ; i++) {
-            coeffsRes[i] = low[i].add(high[i]);
-        }
-        // Store the remaining degrees as the new array
-        for(int i = low.length; i < high.length ; i++) {
-            coeffsRes[i] = high[i];
-        }
-        // Create resultant Poly and return it
-        res = new Poly(high.length-1, coeffsRes);
-        
-        return res;
+        return this.combine(other, false);
     }
     
     /**
@@ -255,118 +210,332 @@ public class Poly implements Arithmetic<Poly> {
      */
     @Override
     public Poly sub(final Poly other) {
+        return this.combine(other, true);
+    }
+    
+    /**
+     * Adds or subtracts other from the Polynomial. The numerators are brought over the 
+     * larger denominator when it is a multiple of the smaller one, and otherwise over their
+     * lowest common multiple, which takes a single gcd of the two denominators.
+     * @param other The other polynomial to add to this
+     * @param negate whether to subtract other instead
+     * @return the result of the addition or subtraction
+     */
+    private Poly combine(final Poly other, final boolean negate) {
+        if(this.expr != null || other.expr != null) {
+            return this.expanded().combine(other.expanded(), negate);
+        }
         // Variables
-        Poly res = null;
-        Complex [] high = this.coeffs.length >  other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] low     = this.coeffs.length <= other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] coeffsRes = new Complex[high.length]; // Create array of Rational coefficients
-        
-        // If this Poly is the higher degree
-        if(this.coeffs==high) {
-            for(int i=0; i < low.length; i++) {
-                // Subtract other from this
-                coeffsRes[i] = high[i].sub(low[i]);
+        BigInteger den = this.den;
+        BigInteger ts  = null; // scale for the numerators of this, or null if unscaled
+        BigInteger os  = null; // scale for the numerators of other, or null if unscaled
+        if(!this.den.equals(other.den)) {
+            final BigInteger[] qr = this.den.compareTo(other.den) > 0 ? this.den.divideAndRemainder(other.den) 
+                                                                      : other.den.divideAndRemainder(this.den);
+            if(qr[1].signum() != 0) {
+                final BigInteger g = this.den.gcd(other.den);
+                ts  = other.den.divide(g);
+                os  = this.den.divide(g);
+                den = this.den.multiply(ts);
+            }else if(this.den.compareTo(other.den) > 0) {
+                os  = qr[0];
+            }else {
+                den = other.den;
+                ts  = qr[0];
             }
-            for(int i=low.length; i < high.length; i++) {
-                // Add on the remaining values
-                coeffsRes[i] = high[i];
+        }
+        if(this.exps != null || other.exps != null) {
+            return this.combineSparse(other, negate, den, ts, os);
+        }
+        final int        len  = Math.max(this.deg, other.deg) + 1;
+        final BigInteger[] re = new BigInteger[len];
+        final BigInteger[] im = this.im == null && other.im == null ? null : new BigInteger[len];
+        
+        // Add the values of the same degree together
+        for(int i = 0; i < len; i++) {
+            final BigInteger a = at(this.re, i, ts), b = at(other.re, i, os);
+            re[i] = negate ? a.subtract(b) : a.add(b);
+            if(im != null) {
+                final BigInteger c = at(this.im, i, ts), d = at(other.im, i, os);
+                im[i] = negate ? c.subtract(d) : c.add(d);
             }
-        // If this Poly is the lower degree
-        }else {
-            for(int i=0; i < low.length; i++) {
-                // Subtract other from this
-                coeffsRes[i] = low[i].sub(high[i]);
+        }
+        return new Poly(re, im, den);
+    }
+    
+    /**
+     * Adds or subtracts other from the Polynomial when either is in sparse form, by merging
+     * the terms in order of their exponents.
+     * @param other The other polynomial to add to this
+     * @param negate whether to subtract other instead
+     * @param den the denominator of the result
+     * @param ts the scale for the numerators of this, or null if unscaled
+     * @param os the scale for the numerators of other, or null if unscaled
+     * @return the result of the addition or subtraction
+     */
+    private Poly combineSparse(final Poly other, final boolean negate, final BigInteger den, 
+                               final BigInteger ts, final BigInteger os) {
+        // Variables
+        final int tn = this.re.length;
+        final int on = other.re.length;
+        final int[]        exps = new int[tn + on];
+        final BigInteger[] re   = new BigInteger[tn + on];
+        final BigInteger[] im   = this.im == null && other.im == null ? null : new BigInteger[tn + on];
+        int i = 0, j = 0, k = 0;
+        
+        while(i < tn || j < on) {
+            final int ei = i < tn ? this.exponent(i)  : Integer.MAX_VALUE;
+            final int ej = j < on ? other.exponent(j) : Integer.MAX_VALUE;
+            BigInteger a = BigInteger.ZERO, b = BigInteger.ZERO, c = BigInteger.ZERO, d = BigInteger.ZERO;
+            if(ei <= ej) {
+                a = at(this.re, i, ts);
+                c = at(this.im, i, ts);
+                i++;
             }
-            for(int i=low.length; i < high.length; i++) {
-                // Subtract the remaining values from zero
-                coeffsRes[i] = Complex.ZERO.sub(high[i]);
+            if(ej <= ei) {
+                b = at(other.re, j, os);
+                d = at(other.im, j, os);
+                j++;
             }
+            exps[k] = Math.min(ei, ej);
+            re[k]   = negate ? a.subtract(b) : a.add(b);
+            if(im != null) im[k] = negate ? c.subtract(d) : c.add(d);
+            k++;
         }
-        // Create resultant Poly and return it
-        res = new Poly(high.length-1, coeffsRes);
-        
-        return res;
+        return new Poly(Arrays.copyOf(exps, k), Arrays.copyOf(re, k), im == null ? null : Arrays.copyOf(im, k), den);
     }
     
     /**
-     * Multiplies the Polynomial by other and returns the resultant polynomial
+     * Multiplies the Polynomial by other and returns the resultant polynomial.
+     * <p>The numerators are convolved as Gaussian integers and the denominators multiplied,
+     * so no gcd normalization is done. If either is in sparse form, only the products of 
+     * their nonzero terms are found.</p>
      * @param other the other polynomial to multiply this by
      * @return the result of the multiplication
+     * @see Convolution
      */
     @Override
     public Poly mul(final Poly other) {
+        if(this.expr != null || other.expr != null) {
+            return this.expanded().mul(other.expanded());
+        }
+        if(other.deg == 0) {
+            return this.mulScalar(other);
+        }
+        if(this.deg == 0) {
+            return other.mulScalar(this);
+        }
+        if(this.exps != null || other.exps != null) {
+            return this.mulSparse(other);
+        }
+        final BigInteger[][] prod = Convolution.multiply(this.re, this.im, other.re, other.im);
+        return new Poly(prod[0], prod[1], this.den.multiply(other.den));
+    }
+    
+    /**
+     * Multiplies every coefficient of the Polynomial by the constant other, keeping its form.
+     * @param other the polynomial of degree 0 to multiply this by
+     * @return the result of the multiplication
+     */
+    private Poly mulScalar(final Poly other) {
         // Variables
-        Poly res = null;
-        Complex [] high = this.coeffs.length >  other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] low     = this.coeffs.length <= other.coeffs.length ? this.coeffs : other.coeffs;
-        Complex [] coeffsRes = new Complex[high.length + low.length - 1]; // Create array of Rational coefficients
-        // Fill the coefficient array with Rationals of value Zero
-        for(int i=0; i < coeffsRes.length; i++) {
-            coeffsRes[i] = new Complex(Rational.ZERO);
-        }
-        // Calculate the result of the multiplication
-        for(int i=0; i < low.length; i++) {
-            for(int j=0; j < high.length; j++) {
-                coeffsRes[i+j] = coeffsRes[i+j].add(low[i].mul(high[j]));
+        final BigInteger cr = other.re[0];
+        final BigInteger ci = at(other.im, 0, null);
+        final BigInteger[] re = new BigInteger[this.re.length];
+        final BigInteger[] im = this.im == null && ci.signum() == 0 ? null : new BigInteger[this.re.length];
+        
+        // (a + bi)(cr + ci*i) = (a*cr - b*ci) + (a*ci + b*cr)i
+        for(int i = 0; i < re.length; i++) {
+            final BigInteger a = this.re[i], b = at(this.im, i, null);
+            re[i] = ci.signum() == 0 ? a.multiply(cr) : a.multiply(cr).subtract(b.multiply(ci));
+            if(im != null) im[i] = ci.signum() == 0 ? b.multiply(cr) : a.multiply(ci).add(b.multiply(cr));
+        }
+        final BigInteger den = this.den.multiply(other.den);
+        return this.exps == null ? new Poly(re, im, den) : new Poly(this.exps, re, im, den);
+    }
+    
+    /**
+     * Multiplies the Polynomial by other term by term, collecting the products by exponent.
+     * @param other the other polynomial to multiply this by
+     * @return the result of the multiplication
+     */
+    private Poly mulSparse(final Poly other) {
+        // Variables
+        final TreeMap<Integer, BigInteger[]> terms = new TreeMap<Integer, BigInteger[]>();
+        
+        for(int i = 0; i < this.re.length; i++) {
+            final BigInteger[] a = { this.re[i], at(this.im, i, null) };
+            if(a[0].signum() == 0 && a[1].signum() == 0) continue;
+            for(int j = 0; j < other.re.length; j++) {
+                final BigInteger[] b = { other.re[j], at(other.im, j, null) };
+                if(b[0].signum() == 0 && b[1].signum() == 0) continue;
+                final Integer      e    = Math.addExact(this.exponent(i), other.exponent(j));
+                final BigInteger[] prod = gaussianMul(a, b);
+                final BigInteger[] sum  = terms.get(e);
+                terms.put(e, sum == null ? prod : new BigInteger[] { sum[0].add(prod[0]), sum[1].add(prod[1]) });
             }
         }
-        // Create resultant Poly and return it
-        res = new Poly(high.length + low.length -2, coeffsRes);
-
-        return res;
+        final int[]        exps = new int[terms.size()];
+        final BigInteger[] re   = new BigInteger[terms.size()];
+        final BigInteger[] im   = new BigInteger[terms.size()];
+        int k = 0;
+        for(Map.Entry<Integer, BigInteger[]> term : terms.entrySet()) {
+            exps[k] = term.getKey();
+            re[k]   = term.getValue()[0];
+            im[k]   = term.getValue()[1];
+            k++;
+        }
+        return new Poly(exps, re, im, this.den.multiply(other.den));
     }
     
     /**
      * Divides the Polynomial by other and returns the resultant Polynomial
      * other must of degree 0 for this to work, otherwise an exception is thrown
+     * <p>Dividing by c = (cr + ci*i)/cd is multiplying by cd*(cr - ci*i) over (cr<sup>2</sup> + ci<sup>2</sup>),
+     * so the numerators are scaled and the denominator multiplied, with no gcd normalization.</p>
      * @param other the other polynomial of degree 0 to divide by this
      * @return the result of the division
      * @throws PolyException if the divisor is invalid
+     * @throws ComplexException if the divisor is zero
      */
     @Override
     public Poly div(final Poly other) throws PolyException{
+        if(this.expr != null || other.expr != null) {
+            return this.expanded().div(other.expanded());
+        }
         if(other.deg>0)throw new PolyException(PolyException.Flags.INVALID_DIVISOR);
+        if(other.isZero())throw new ComplexException(ComplexException.Flags.DIVISION_BY_ZERO);
         
-        Poly         res       = null;
-        Complex [] coeffsRes = new Complex[this.deg+1];
-        for(int i=0; i < coeffsRes.length; i++) {
-            coeffsRes[i] = this.coeffs[i].div(other.coeffs[0]);
-        }
-        res = new Poly(this.deg, coeffsRes);
+        // Variables
+        final BigInteger cr = other.re[0];
+        final BigInteger ci = at(other.im, 0, null);
+        final BigInteger cd = other.den;
+        final BigInteger[] re = new BigInteger[this.re.length];
+        final BigInteger[] im = this.im == null && ci.signum() == 0 ? null : new BigInteger[this.re.length];
+        final BigInteger den;
         
-        return res;
+        if(ci.signum() == 0) {
+            // Real divisor: keep the denominator positive
+            final BigInteger scale = cr.signum() < 0 ? cd.negate() : cd;
+            for(int i = 0; i < re.length; i++) {
+                re[i] = this.re[i].multiply(scale);
+                if(im != null) im[i] = this.im[i].multiply(scale);
+            }
+            den = this.den.multiply(cr.abs());
+        }else {
+            // (a + bi)(cr - ci*i) = (a*cr + b*ci) + (b*cr - a*ci)i
+            for(int i = 0; i < re.length; i++) {
+                final BigInteger a = this.re[i], b = at(this.im, i, null);
+                re[i] = a.multiply(cr).add(b.multiply(ci)).multiply(cd);
+                im[i] = b.multiply(cr).subtract(a.multiply(ci)).multiply(cd);
+            }
+            den = this.den.multiply(cr.multiply(cr).add(ci.multiply(ci)));
+        }
+        return this.exps == null ? new Poly(re, im, den) : new Poly(this.exps, re, im, den);
     }
     
     /**
      * Calculates <i>this<sup>other</sup></i> and returns that value.
      * other must be a positive polynomial of degree 0.
+     * <p>Single terms are raised directly, linear polynomials are expanded directly by the 
+     * binomial theorem, and any other polynomial is raised by repeated squaring.</p>
      * @param other the value to raise to the power of
      * @return the calculated value
      * @throws PolyException If exponent is invalid
      */
     @Override
     public Poly exp(final Poly other) throws PolyException{
-        if(!other.coeffs[0].getImaginary().equals(Rational.ZERO)) throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
-        BigInteger e      = other.coeffs[0].getReal().getNumerator();
+        if(this.expr != null || other.expr != null) {
+            return this.expanded().exp(other.expanded());
+        }
+        final BigInteger e = BigInteger.valueOf(other.toExponent());
         Poly res = null;
 
-        // Throw exceptions
-        if(other.deg>0)throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);        
-        if(other.coeffs[0].getReal().getDenominator().compareTo(BigInteger.ONE)>0)throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
-        if(other.coeffs[0].getReal().isNegative())throw new PolyException(PolyException.Flags.NEGATIVE_EXPONENT);
-        if(this.coeffs[0].equals(Rational.ZERO) && e.equals(BigInteger.ZERO)) throw new PolyException(PolyException.Flags.INDETERMINATE_FORM);
-        
         // If exponent is 0, Polynomial is just 1 (x^0 = 1);
         if(e.equals(BigInteger.ZERO)) res = new Poly(Complex.ONE);
+        else if(this.deg == 0) res = this.constantPow(e.intValue());
+        else if(this.terms() == 1) res = this.monomial(e.intValue());
+        else if(this.deg == 1) res = this.binomial(e.intValue());
         else {
-            res = new Poly(this); // Copies current poly
-            for(int i=0; i<e.intValue()-1; i++) {
-                res = res.mul(this); // Multiply by itself e-1 times
+            // Square for each bit of the exponent below the top, multiplying in this for each set bit
+            res = new Poly(this);
+            for(int i = e.bitLength() - 2; i >= 0; i--) {
+                res = res.mul(res);
+                if(e.testBit(i)) res = res.mul(this);
             }
         }
         return res;
     }
     
+    /**
+     * Raises this Poly, which has a single nonzero term c*x<sup>k</sup>, to the power n as
+     * c<sup>n</sup>x<sup>kn</sup>.
+     * 
+     * @param n the power to raise this to
+     * @return the raised term
+     * @throws PolyException if the degree of the result is too large
+     */
+    private Poly monomial(final int n) throws PolyException{
+        int k = 0;
+        while(this.re[k].signum() == 0 && at(this.im, k, null).signum() == 0) {
+            k++;
+        }
+        final int e;
+        try {
+            e = Math.multiplyExact(this.exponent(k), n);
+        } catch(ArithmeticException ex) {
+            throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
+        }
+        final BigInteger[] c = gaussianPow(new BigInteger[] { this.re[k], at(this.im, k, null) }, n);
+        return new Poly(new int[] { e }, new BigInteger[] { c[0] }, new BigInteger[] { c[1] }, this.den.pow(n));
+    }
+    
+    /**
+     * Raises this constant Poly to the power n by raising its numerator and denominator
+     * separately, so that no gcd is taken.
+     * 
+     * @param n the power to raise this to
+     * @return the raised constant
+     */
+    private Poly constantPow(final int n) {
+        final BigInteger[] c = gaussianPow(new BigInteger[] { this.re[0], at(this.im, 0, null) }, n);
+        return new Poly(new BigInteger[] { c[0] }, this.im == null ? null : new BigInteger[] { c[1] }, this.den.pow(n));
+    }
+    
+    /**
+     * Expands <i>(a + bx)<sup>n</sup></i> by the binomial theorem, where a and b are the 
+     * coefficients of this linear Poly.
+     * <p>With a = A/d and b = B/d for Gaussian integers A and B, the k-th coefficient is 
+     * C(n,k) A<sup>n-k</sup> B<sup>k</sup> / d<sup>n</sup>. The powers and binomial coefficients 
+     * are each found from the previous one, so the expansion takes O(n) exact operations.</p>
+     * 
+     * @param n the power to raise this to
+     * @return the expanded power
+     */
+    private Poly binomial(final int n) {
+        // Variables
+        final BigInteger[][] powA = new BigInteger[n+1][]; // powA[j] is A^j as {re, im}
+        final BigInteger[][] powB = new BigInteger[n+1][]; // powB[j] is B^j as {re, im}
+        final BigInteger[] a  = { this.re[0], at(this.im, 0, null) };
+        final BigInteger[] b  = { this.re[1], at(this.im, 1, null) };
+        final BigInteger[] re = new BigInteger[n+1];
+        final BigInteger[] im = this.im == null ? null : new BigInteger[n+1];
+        
+        powA[0] = powB[0] = new BigInteger[] { BigInteger.ONE, BigInteger.ZERO };
+        for(int j = 1; j <= n; j++) {
+            powA[j] = gaussianMul(powA[j-1], a);
+            powB[j] = gaussianMul(powB[j-1], b);
+        }
+        BigInteger choose = BigInteger.ONE; // C(n,k)
+        for(int k = 0; k <= n; k++) {
+            final BigInteger[] term = gaussianMul(powA[n-k], powB[k]);
+            re[k] = term[0].multiply(choose);
+            if(im != null) im[k] = term[1].multiply(choose);
+            choose = choose.multiply(BigInteger.valueOf(n-k)).divide(BigInteger.valueOf(k+1));
+        }
+        return new Poly(re, im, this.den.pow(n));
+    }
+    
     /**
      * Returns a <code>Poly</code> whose value is <code>(this mod other)</code>
      * 
@@ -388,16 +557,37 @@ public class Poly implements Arithmetic<Poly> {
      */
     public Poly diff() {
         // Variables
-        Complex [] coeffsRes     = new Complex[this.deg];
         Poly         res         = null;
         
-        if(this.deg>0) {
-            // Calculate the new coefficients
+        if(this.expr != null) {
+            // The derivative is found from the Taylor series of the expression, so it stays lazy
+            res = new Poly(new Expression.Derivative(this.expr));
+        }else if(this.deg>0 && this.exps != null) {
+            // Drop the constant term, which is the first if there is one
+            final int          skip = this.exps[0] == 0 ? 1 : 0;
+            final int          len  = this.exps.length - skip;
+            final int[]        exps = new int[len];
+            final BigInteger[] re   = new BigInteger[len];
+            final BigInteger[] im   = this.im == null ? null : new BigInteger[len];
+            for(int k = 0; k < len; k++) {
+                final int        e = this.exps[k+skip];
+                final BigInteger n = BigInteger.valueOf(e);
+                exps[k] = e - 1;
+                re[k]   = this.re[k+skip].multiply(n);
+                if(im != null) im[k] = this.im[k+skip].multiply(n);
+            }
+            res = new Poly(exps, re, im, this.den);
+        }else if(this.deg>0) {
+            final BigInteger[] re = new BigInteger[this.deg];
+            final BigInteger[] im = this.im == null ? null : new BigInteger[this.deg];
+            // Calculate the new numerators, the denominator is unchanged
             for(int i = this.deg; i > 0; i--) {
-                coeffsRes[i-1] = this.coeffs[i].mul(new Complex(new Rational(i))); 
+                final BigInteger n = BigInteger.valueOf(i);
+                re[i-1] = this.re[i].multiply(n);
+                if(im != null) im[i-1] = this.im[i].multiply(n);
             }
             // Create and return new poly of 1 degree less, with new coefficients
-            res = new Poly(this.deg-1, coeffsRes);
+            res = new Poly(re, im, this.den);
         }else {
             res = new Poly(Complex.ZERO);
         }
@@ -412,16 +602,138 @@ public class Poly implements Arithmetic<Poly> {
      * @see Rational
      */
     public Complex evalAt(final Complex p) {
+        return this.evalAt(p, 0)[0];
+    }
+    
+    /**
+     * Evaluates the polynomial and its first <code>derivatives</code> derivatives at the 
+     * value p, in a single pass of Horner's Method.
+     * <p>With p = P/pd for a Gaussian integer P, the j-th partial result after t steps is
+     * scaled by den*pd<sup>t-1-j</sup>, which keeps every value a Gaussian integer. The
+     * division is only done once at the end.</p>
+     * 
+     * @param p the value to evaluate at
+     * @param derivatives the number of derivatives to evaluate
+     * @return an array where index j holds the j-th derivative evaluated at p
+     */
+    public Complex[] evalAt(final Complex p, final int derivatives) {
+        if(this.expr != null) {
+            return this.expr.derivativesAt(p, derivatives);
+        }
         // Variables
-        Complex res = new Complex(Rational.ZERO); // Rational with value ZERO 
+        final Rational   pRe = p.getReal();
+        final Rational   pIm = p.getImaginary();
+        final BigInteger pd  = lcm(pRe.getDenominator(), pIm.getDenominator());
+        final BigInteger pr  = pRe.getNumerator().multiply(pd.divide(pRe.getDenominator()));
+        final BigInteger pi  = pIm.getNumerator().multiply(pd.divide(pIm.getDenominator()));
+        final boolean    real = this.im == null && pi.signum() == 0;
+        final boolean    whole = pd.equals(BigInteger.ONE);
+        final BigInteger[] rr = new BigInteger[derivatives+1];
+        final BigInteger[] ri = new BigInteger[derivatives+1];
+        final Complex[]   res = new Complex[derivatives+1];
+        Arrays.fill(rr, BigInteger.ZERO);
+        Arrays.fill(ri, BigInteger.ZERO);
+        
+        if(this.exps != null) {
+            for(int j = 0; j <= derivatives; j++) {
+                res[j] = this.evalSparse(pr, pi, pd, j);
+            }
+            return res;
+        }
         
-        // Use Horner's Method to calculate evaluation, then return value
+        // Use Horner's Method, accumulating the derivatives of each partial result.
+        // Afterwards rr[j]+ri[j]i holds the j-th derivative divided by j!, times den*pd^(deg-j)
+        BigInteger q = BigInteger.ONE; // pd^t
         for (int i = this.deg; i >= 0; i--) {
-            res = this.coeffs[i].add(p.mul(res));
+            for(int j = derivatives; j > 0; j--) {
+                if(real) {
+                    rr[j] = rr[j-1].add(pr.multiply(rr[j]));
+                }else {
+                    final BigInteger t = rr[j-1].add(pr.multiply(rr[j])).subtract(pi.multiply(ri[j]));
+                    ri[j] = ri[j-1].add(pr.multiply(ri[j])).add(pi.multiply(rr[j]));
+                    rr[j] = t;
+                }
+            }
+            final BigInteger cr = whole ? this.re[i] : this.re[i].multiply(q);
+            if(real) {
+                rr[0] = cr.add(pr.multiply(rr[0]));
+            }else {
+                final BigInteger ci = whole ? at(this.im, i, null) : at(this.im, i, q);
+                final BigInteger t = cr.add(pr.multiply(rr[0])).subtract(pi.multiply(ri[0]));
+                ri[0] = ci.add(pr.multiply(ri[0])).add(pi.multiply(rr[0]));
+                rr[0] = t;
+            }
+            if(!whole) q = q.multiply(pd);
+        }
+        BigInteger factorial = BigInteger.ONE;
+        for(int j = 0; j <= derivatives; j++) {
+            if(j > 1) factorial = factorial.multiply(BigInteger.valueOf(j));
+            if(j > this.deg) {
+                res[j] = Complex.ZERO;
+                continue;
+            }
+            final BigInteger d = whole ? this.den : this.den.multiply(pd.pow(this.deg - j));
+            res[j] = new Complex(new Rational(rr[j].multiply(factorial), d), new Rational(ri[j].multiply(factorial), d));
         }
         return res;
     }
     
+    /**
+     * Evaluates the j-th derivative of this Poly in sparse form at P/pd, by Horner's Method 
+     * from term to term. The power of P across the gap between two exponents is found by 
+     * repeated squaring, and the partial result is scaled by a matching power of pd so it 
+     * stays a Gaussian integer.
+     * 
+     * @param pr the real part of P
+     * @param pi the imaginary part of P
+     * @param pd the denominator of the point
+     * @param j the derivative to evaluate
+     * @return the value of the derivative
+     */
+    private Complex evalSparse(final BigInteger pr, final BigInteger pi, final BigInteger pd, final int j) {
+        // Variables
+        final BigInteger[] p = { pr, pi };
+        final int top = this.exps[this.exps.length-1];
+        BigInteger[] acc = null;             // the partial result
+        BigInteger   q   = BigInteger.ONE;   // pd^(top - e) for the exponent e of the last term
+        int          last = top;
+        
+        for(int k = this.exps.length-1; k >= 0 && this.exps[k] >= j; k--) {
+            final int e = this.exps[k];
+            // The j-th derivative of x^e is e!/(e-j)! x^(e-j)
+            BigInteger falling = BigInteger.ONE;
+            for(int m = 0; m < j; m++) {
+                falling = falling.multiply(BigInteger.valueOf(e - m));
+            }
+            if(acc != null) {
+                acc = gaussianMul(acc, gaussianPow(p, last - e));
+                q   = q.multiply(pd.pow(last - e));
+            }else {
+                acc = new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+            }
+            final BigInteger scale = falling.multiply(q);
+            acc[0] = acc[0].add(this.re[k].multiply(scale));
+            acc[1] = acc[1].add(at(this.im, k, null).multiply(scale));
+            last = e;
+        }
+        if(acc == null) return Complex.ZERO;
+        acc = gaussianMul(acc, gaussianPow(p, last - j));
+        final BigInteger d = this.den.multiply(pd.pow(top - j));
+        return new Complex(new Rational(acc[0], d), new Rational(acc[1], d));
+    }
+    
+    /**
+     * Compiles this polynomial into an immutable double-precision evaluator,
+     * for use when exact evaluation isn't required (such as plotting).
+     *
+     * @return a CompiledPoly with the coefficients of this Poly
+     * @see CompiledPoly
+     */
+    public CompiledPoly compileDouble() {
+        if(this.expr != null) return new CompiledPoly(this.expr);
+        return new CompiledPoly(this.exps, this.re, this.im, this.den);
+    }
+    
     /**
      * Calculates and prints any Rational roots of the Polynomial.
      * 
@@ -434,9 +746,14 @@ public class Poly implements Arithmetic<Poly> {
      * @see Tools#factor(int, boolean)
      */
     public void iRoots() {
+        if(this.expr != null) {
+            this.expanded().iRoots();
+            return;
+        }
         
         // Variables
-        Poly      temp       = new Poly(this);     // Copy of this Poly
+        Complex[] coeffs   = new Complex[this.deg+1]; // Copy of the coefficients
+        Poly      temp       = null;                // Copy of this Poly, without denominators
         Complex x           = null;                // x to evaluate at
         Complex lcm;
         
@@ -450,29 +767,35 @@ public class Poly implements Arithmetic<Poly> {
         ArrayList<Rational> roots = new ArrayList<Rational>(); // the roots discovered
         String output        = "";                // The output string
         
+        // Copy the coefficients, filling in the terms missing from the sparse form
+        Arrays.fill(coeffs, Complex.ZERO);
+        for(int k=0; k<this.re.length; k++) {
+            coeffs[this.exponent(k)] = this.coefficients()[k];
+        }
         // Store all denominators in an array
-        for(int i=0; i<=temp.deg; i++) {
-            denom[i] = temp.coeffs[i].getReal().getDenominator().intValue();
+        for(int i=0; i<=this.deg; i++) {
+            denom[i] = coeffs[i].getReal().getDenominator().intValue();
         }
         // Calculate the lcm
         lcm = new Complex(new Rational(Tools.lcm(denom)));
         
         // multiply all the coefficients by the lcm to remove the denominator
-        for(int i=0; i<=temp.deg; i++) {
-            temp.coeffs[i] = temp.coeffs[i].mul(lcm); // Mul was overloaded to take integers
+        for(int i=0; i<=this.deg; i++) {
+            coeffs[i] = coeffs[i].mul(lcm); // Mul was overloaded to take integers
         }
+        temp = new Poly(this.deg, coeffs);
         // If the constant term is zero, then 0 is a root
-        if(temp.coeffs[0].equals(Complex.ZERO)) {
+        if(coeffs[0].equals(Complex.ZERO)) {
             roots.add(Rational.ZERO);
         }
         // Calculate how many terms are zero to common factor out x terms
-        while(offset < temp.deg && temp.coeffs[offset].equals(Complex.ZERO)) {
+        while(offset < this.deg && coeffs[offset].equals(Complex.ZERO)) {
             offset++;
         }
         // Calculate the factors of P and Q
         // Only P factors can contain negative values (this way there aren't redundant values)
-        p_factors = Tools.factor(temp.coeffs[offset].getReal().getNumerator().intValue(), true);
-        q_factors = Tools.factor(temp.coeffs[this.deg].getReal().getNumerator().intValue(), false);
+        p_factors = Tools.factor(coeffs[offset].getReal().getNumerator().intValue(), true);
+        q_factors = Tools.factor(coeffs[this.deg].getReal().getNumerator().intValue(), false);
 
         // Diophantine Equation
         // p is the factors of the constant term
@@ -523,13 +846,24 @@ public class Poly implements Arithmetic<Poly> {
             return false;
         }else{
             Poly other = (Poly) obj;
+            // Lazy Polys parsed from the same expression are equal without being expanded
+            if(this.expr != null && other.expr != null && this.expr.matches(other.expr)) {
+                return true;
+            }else if(this.expr != null || other.expr != null) {
+                return this.expanded().equals(other.expanded());
             // Are the degrees the same?
-            if(this.deg!=other.deg) {
+            }else if(this.deg!=other.deg) {
                 return false; 
+            // Are the same terms present? The form is picked by the terms, so it matches too
+            }else if(!Arrays.equals(this.exps, other.exps)) {
+                return false;
             // Are all the coefficients the same?
             }else{    
-                for(int i = this.deg; i >= 0; i--){
-                    if(!this.coeffs[i].equals(other.coeffs[i])){
+                // Compare the numerators across the two denominators
+                final boolean same = this.den.equals(other.den);
+                for(int i = this.re.length-1; i >= 0; i--){
+                    if(!same(this.re[i], other.den, other.re[i], this.den, same) ||
+                       !same(at(this.im, i, null), other.den, at(other.im, i, null), this.den, same)){
                         return false; 
                     }
                 }
@@ -538,6 +872,36 @@ public class Poly implements Arithmetic<Poly> {
         return true;
     }
     
+    /**
+     * Returns whether this <code>Poly</code> is known to equal another without expanding either
+     * of them. They are known to be equal if they are the same object, are parsed from the same
+     * expression, or are both expanded and equal. A lazy Poly that hasn't been expanded is never
+     * known to equal an expanded one, though it may.
+     * 
+     * @param other the other Poly to be compared
+     * @return true if they are known to be equal, false if they may differ
+     */
+    boolean isKnownEqual(final Poly other) {
+        if(this == other) return true;
+        if(this.expr != null && other.expr != null && this.expr.matches(other.expr)) return true;
+        final Poly a = this.expr == null ? this : this.expansion;
+        final Poly b = other.expr == null ? other : other.expansion;
+        return a != null && b != null && a.equals(b);
+    }
+    
+    /**
+     * Returns a hash code for this <code>Poly</code>, consistent with <code>equals</code>. 
+     * The hash is taken over the coefficients in lowest terms, so equal Polys over different 
+     * denominators hash alike, and a lazy Poly is hashed by its expansion.
+     * 
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        if(this.expr != null) return this.expanded().hashCode();
+        return 31 * Arrays.hashCode(this.coefficients()) + Arrays.hashCode(this.exps);
+    }
+    
     // ---------------------------------------------------------------------------------
     
     /**
@@ -551,30 +915,60 @@ public class Poly implements Arithmetic<Poly> {
      */
     @Override
     public String toString() {
-        String output = "";
-        for(int i = this.deg; i>=0; i--) {
-            if(!this.coeffs[i].equals(Complex.ZERO)) {
-                if(i!=0 && this.coeffs[i].equals(Complex.NEG_ONE)) {
-                    output += "-";
-                }
-                else if(this.coeffs[i].isComplex()) {
-                    output += "(" + this.coeffs[i] + ")";
-                }
-                else if(i==0 || !this.coeffs[i].equals(Complex.ONE)){
-                    output += this.coeffs[i];
-                }
-                output += (i > 1 ? this.variable + "^" + i : (i == 1 ? this.variable : ""));    
+        if(this.expr != null) return this.expanded().toString();
+        final Complex[] coeffs = this.coefficients();
+        if(this.deg==0) {
+            return coeffs[0].toString();
+        }
+        final StringBuilder output = new StringBuilder();
+        // Only the nonzero terms are printed, from the highest degree down
+        for(int k = coeffs.length-1; k >= 0; k--) {
+            final int i = this.exponent(k);
+            if(coeffs[k].equals(Complex.ZERO)) continue;
+            if(i!=this.deg && (coeffs[k].getReal().isPositive()|| 
+                               coeffs[k].getImaginary().isPositive()||
+                               coeffs[k].isComplex())) {
+                output.append("+");
             }
-            if(i!=0 && (this.coeffs[i-1].getReal().isPositive()|| 
-                        this.coeffs[i-1].getImaginary().isPositive()||
-                        this.coeffs[i-1].isComplex())) {
-                output += "+";
+            if(i!=0 && coeffs[k].equals(Complex.NEG_ONE)) {
+                output.append("-");
             }
+            else if(coeffs[k].isComplex()) {
+                output.append("(").append(coeffs[k]).append(")");
+            }
+            else if(i==0 || !coeffs[k].equals(Complex.ONE)){
+                output.append(coeffs[k]);
+            }
+            output.append(i > 1 ? this.variable + "^" + i : (i == 1 ? this.variable : ""));    
         }
-        if(this.deg==0) {
-            output = this.coeffs[0].toString();
-        }
-        return output;
+        return output.toString();
+    }
+    
+    /**
+     * Returns the degree of this <code>Poly</code>
+     * @return the degree
+     */
+    public int getDegree() {
+        if(this.expr != null) return this.expanded().deg;
+        return this.deg;
+    }
+    
+    /**
+     * Returns whether this <code>Poly</code> is held in sparse form, in which case it has few
+     * nonzero terms for its degree and should be evaluated term by term.
+     * @return true if sparse, false if dense
+     */
+    public boolean isSparse() {
+        return this.expr == null && this.exps != null;
+    }
+    
+    
+    /**
+     * Returns the letter variable of the polynomial
+     * @return the variable
+     */
+    public String getVariable() {
+        return this.variable;
     }
     
     /**
@@ -585,50 +979,310 @@ public class Poly implements Arithmetic<Poly> {
     public void setVariable(String variable) throws PolyException {
         if(variable.length() > 1)throw new PolyException(PolyException.Flags.BAD_VARIABLE);
         this.variable = variable;
+        final Poly expansion = this.expansion;
+        if(expansion != null) expansion.variable = variable;
     }
     // ---------------------------------------------------------------------------------
     
     /**
-     * Performs mathematical operation popped from the operator stack, using the top
-     * two operands from the operand stack. 
-     * The result is pushed back onto the operand stack. 
+     * Returns this <code>Poly</code> with its coefficients, expanding the expression of a lazy
+     * Poly the first time they are needed.
      * 
-     * @param operator pointer to a Stack of Character operators
-     * @param operand pointer to a Stack of Poly values
-     * @throws OperatorException An operator error
+     * @return this Poly if it isn't lazy, otherwise its expansion
      */
-    private static void operate(final Stack<Operator> operator, final Stack<Poly> operand) throws OperatorException{
-        final Operator op = operator.pop();
-        if(op.toString()=="(")throw new OperatorException(OperatorException.Flags.NO_RIGHT_PARENTHESIS);
-        final Poly q = operand.pop();
-        final Poly p = operand.pop();
-        operand.push((Poly) op.perform(p, q));
+    private Poly expanded() {
+        if(this.expr == null) return this;
+        Poly res = this.expansion;
+        if(res == null) {
+            // Copied, since the expansion of a leaf is the Poly held in the tree
+            res = new Poly(this.expr.expand());
+            res.variable = this.variable;
+            this.expansion = res;
+        }
+        return res;
     }
-
+    
     /**
-     * Reduces the Polynomial's degree to match the number of coefficients,
-     * also removes preceding 0 coefficients. This function is called upon creation of Poly objects
-     * @see #Poly(String)
+     * Returns the value of this constant <code>Poly</code> as an exponent.
+     * 
+     * @return the exponent
+     * @throws PolyException if this is not a non-negative integer small enough to be an exponent
      */
-    private void reducePoly() {
-        // Variables
-        int i = this.deg;
+    int toExponent() throws PolyException {
+        if(this.expr != null) return this.expanded().toExponent();
+        if(at(this.im, 0, null).signum() != 0) throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
+        final BigInteger[] qr = this.re[0].divideAndRemainder(this.den);
         
+        if(this.deg>0)throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);        
+        if(qr[1].signum() != 0)throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
+        if(qr[0].signum() < 0)throw new PolyException(PolyException.Flags.NEGATIVE_EXPONENT);
+        if(qr[0].bitLength() > 31) throw new PolyException(PolyException.Flags.INVALID_EXPONTENT);
+        return qr[0].intValue();
+    }
+    
+    /**
+     * Returns the coefficients of this <code>Poly</code> in lowest terms, reducing them
+     * from the numerators the first time they are observed. In sparse form only the
+     * coefficients of the terms are returned.
+     * 
+     * @return the coefficients in ascending order; the array must not be modified
+     */
+    private Complex[] coefficients() {
+        Complex[] res = this.coeffs;
+        if(res == null) {
+            // Divide out any factor common to every numerator first, so that each
+            // coefficient is reduced against a smaller denominator
+            BigInteger g = this.den;
+            for(int i = 0; i < this.re.length && !g.equals(BigInteger.ONE); i++) {
+                g = g.gcd(this.re[i]);
+                if(this.im != null) g = g.gcd(this.im[i]);
+            }
+            final boolean    reduced = !g.equals(BigInteger.ONE);
+            final BigInteger den     = reduced ? this.den.divide(g) : this.den;
+            res = new Complex[this.re.length];
+            for(int i = 0; i < res.length; i++) {
+                final BigInteger r = reduced ? this.re[i].divide(g) : this.re[i];
+                final BigInteger m = this.im == null ? BigInteger.ZERO : reduced ? this.im[i].divide(g) : this.im[i];
+                res[i] = new Complex(new Rational(r, den), new Rational(m, den));
+            }
+            this.coeffs = res;
+        }
+        return res;
+    }
+    
+    /**
+     * Sets the numerators from <code>Complex</code> coefficients, over the lowest common 
+     * multiple of their denominators.
+     * 
+     * @param coeffs the coefficients in ascending order
+     */
+    private void setCoefficients(final Complex[] coeffs) {
+        BigInteger den = BigInteger.ONE;
+        for(Complex c : coeffs) {
+            den = lcm(den, c.getReal().getDenominator());
+            den = lcm(den, c.getImaginary().getDenominator());
+        }
+        final BigInteger[] re = new BigInteger[coeffs.length];
+        final BigInteger[] im = new BigInteger[coeffs.length];
+        for(int i = 0; i < coeffs.length; i++) {
+            re[i] = scale(coeffs[i].getReal(), den);
+            im[i] = scale(coeffs[i].getImaginary(), den);
+        }
+        this.set(re, im, den);
+    }
+    
+    /**
+     * Sets the numerators and denominator, dropping any leading zero coefficients and
+     * the imaginary parts if they are all zero. If few of the coefficients are nonzero
+     * the Poly is held in sparse form.
+     */
+    private void set(BigInteger[] re, BigInteger[] im, BigInteger den) {
         // Count how many leading coefficients are 0
-        while(i > 0 && this.coeffs[i].equals(Rational.ZERO)) {
-            i--;
-        }
-        // If the degree changed
-        if(this.deg - i != 0) {
-            this.deg -= (this.deg - i); // Subtract the difference
-            Complex [] newCoeffs = new Complex[this.deg+1];
-            // Calculate new degree
-            for(int j = 0; j <= this.deg; j++) {
-                newCoeffs[j] = this.coeffs[j];
+        int deg = re.length - 1;
+        while(deg > 0 && re[deg].signum() == 0 && (im == null || im[deg].signum() == 0)) {
+            deg--;
+        }
+        int terms = 0;
+        for(int i = 0; i <= deg; i++) {
+            if(re[i].signum() != 0 || (im != null && im[i].signum() != 0)) terms++;
+        }
+        if(sparse(terms, deg)) {
+            final int[] exps = new int[terms];
+            for(int i = 0, k = 0; i <= deg; i++) {
+                if(re[i].signum() != 0 || (im != null && im[i].signum() != 0)) exps[k++] = i;
+            }
+            this.setSparse(exps, pick(re, exps), im == null ? null : pick(im, exps), den);
+            return;
+        }
+        if(deg != re.length - 1) {
+            re = Arrays.copyOf(re, deg+1);
+            if(im != null) im = Arrays.copyOf(im, deg+1);
+        }
+        if(im != null && isZero(im)) {
+            im = null;
+        }
+        // Zero has a single representation
+        if(deg == 0 && re[0].signum() == 0 && im == null) {
+            den = BigInteger.ONE;
+        }
+        this.deg    = deg;
+        this.exps   = null;
+        this.re     = re;
+        this.im     = im;
+        this.den    = den;
+        this.coeffs = null;
+    }
+    
+    /**
+     * Sets the terms and denominator, dropping any zero terms and the imaginary parts if
+     * they are all zero. If many of the coefficients are nonzero the Poly is held in dense form.
+     */
+    private void setSparse(int[] exps, BigInteger[] re, BigInteger[] im, BigInteger den) {
+        // Drop the zero terms
+        int terms = 0;
+        for(int k = 0; k < exps.length; k++) {
+            if(re[k].signum() != 0 || (im != null && im[k].signum() != 0)) terms++;
+        }
+        if(terms != exps.length) {
+            final int[] nonzero = new int[terms];
+            for(int k = 0, t = 0; k < exps.length; k++) {
+                if(re[k].signum() != 0 || (im != null && im[k].signum() != 0)) nonzero[t++] = k;
+            }
+            final int[] e = new int[terms];
+            for(int t = 0; t < terms; t++) {
+                e[t] = exps[nonzero[t]];
+            }
+            exps = e;
+            re   = pick(re, nonzero);
+            if(im != null) im = pick(im, nonzero);
+        }
+        final int deg = terms == 0 ? 0 : exps[terms-1];
+        if(!sparse(terms, deg)) {
+            // Spread the terms out into dense form
+            final BigInteger[] dre = new BigInteger[deg+1];
+            final BigInteger[] dim = im == null ? null : new BigInteger[deg+1];
+            Arrays.fill(dre, BigInteger.ZERO);
+            if(dim != null) Arrays.fill(dim, BigInteger.ZERO);
+            for(int k = 0; k < terms; k++) {
+                dre[exps[k]] = re[k];
+                if(dim != null) dim[exps[k]] = im[k];
             }
-            // Set pointer to the newly created array of coefficients
-            this.coeffs = newCoeffs;
+            this.set(dre, dim, den);
+            return;
         }
+        if(im != null && isZero(im)) {
+            im = null;
+        }
+        this.deg    = deg;
+        this.exps   = exps;
+        this.re     = re;
+        this.im     = im;
+        this.den    = den;
+        this.coeffs = null;
+    }
+    
+    /**
+     * Returns whether a Poly with the given number of nonzero terms and degree is held in sparse form
+     */
+    private static boolean sparse(final int terms, final int deg) {
+        return deg >= SPARSE_MIN_DEGREE && (long) terms * SPARSE_DENSITY <= deg;
+    }
+    
+    /**
+     * Returns the number of nonzero terms
+     */
+    int terms() {
+        if(this.expr != null) return this.expanded().terms();
+        int terms = 0;
+        for(int k = 0; k < this.re.length; k++) {
+            if(this.re[k].signum() != 0 || at(this.im, k, null).signum() != 0) terms++;
+        }
+        return terms;
+    }
+    
+    /**
+     * Returns the largest bit length of the numerators of the coefficients
+     */
+    int bitLength() {
+        if(this.expr != null) return this.expanded().bitLength();
+        int bits = 0;
+        for(int k = 0; k < this.re.length; k++) {
+            bits = Math.max(bits, Math.max(this.re[k].bitLength(), at(this.im, k, null).bitLength()));
+        }
+        return bits;
+    }
+    
+    /**
+     * Returns the exponent of the k-th stored coefficient
+     */
+    private int exponent(final int k) {
+        return this.exps == null ? k : this.exps[k];
+    }
+    
+    /**
+     * Returns whether this <code>Poly</code> is zero
+     */
+    boolean isZero() {
+        if(this.expr != null) return this.expanded().isZero();
+        return this.deg == 0 && this.re[0].signum() == 0 && this.im == null;
+    }
+    
+    /**
+     * Returns a[i] times scale, or a[i] if scale is null. Missing values are zero.
+     */
+    private static BigInteger at(final BigInteger[] a, final int i, final BigInteger scale) {
+        if(a == null || i >= a.length) return BigInteger.ZERO;
+        return scale == null ? a[i] : a[i].multiply(scale);
+    }
+    
+    /**
+     * Returns whether a/ad equals b/bd, without dividing. If the denominators are
+     * known to be the same only the numerators are compared.
+     */
+    private static boolean same(final BigInteger a, final BigInteger bd, final BigInteger b, final BigInteger ad, 
+                                final boolean sameDen) {
+        if(sameDen) return a.equals(b);
+        if(a.signum() != b.signum()) return false;
+        return a.multiply(bd).equals(b.multiply(ad));
+    }
+    
+    /**
+     * Returns the numerator of r over the denominator den, which must be a multiple of its own
+     */
+    private static BigInteger scale(final Rational r, final BigInteger den) {
+        return r.getNumerator().multiply(den.divide(r.getDenominator()));
+    }
+    
+    /**
+     * Multiplies two Gaussian integers given as {re, im}
+     */
+    private static BigInteger[] gaussianMul(final BigInteger[] a, final BigInteger[] b) {
+        if(a[1].signum() == 0 && b[1].signum() == 0) {
+            return new BigInteger[] { a[0].multiply(b[0]), BigInteger.ZERO };
+        }
+        return new BigInteger[] { a[0].multiply(b[0]).subtract(a[1].multiply(b[1])),
+                                  a[0].multiply(b[1]).add(a[1].multiply(b[0])) };
+    }
+    
+    /**
+     * Raises a Gaussian integer given as {re, im} to the power n by repeated squaring
+     */
+    private static BigInteger[] gaussianPow(final BigInteger[] a, final int n) {
+        BigInteger[] res = { BigInteger.ONE, BigInteger.ZERO };
+        for(int i = 31 - Integer.numberOfLeadingZeros(n); i >= 0; i--) {
+            res = gaussianMul(res, res);
+            if((n >>> i & 1) != 0) res = gaussianMul(res, a);
+        }
+        return res;
+    }
+    
+    /**
+     * Returns the values at the given indices
+     */
+    private static BigInteger[] pick(final BigInteger[] a, final int[] indices) {
+        final BigInteger[] res = new BigInteger[indices.length];
+        for(int k = 0; k < indices.length; k++) {
+            res[k] = a[indices[k]];
+        }
+        return res;
+    }
+    
+    /**
+     * Returns whether every value is zero
+     */
+    private static boolean isZero(final BigInteger[] a) {
+        for(BigInteger v : a) {
+            if(v.signum() != 0) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Calculates the lowest common multiple of two positive values
+     */
+    private static BigInteger lcm(final BigInteger a, final BigInteger b) {
+        if(a.equals(b) || b.equals(BigInteger.ONE)) return a;
+        return a.divide(a.gcd(b)).multiply(b);
     }
     
 }
@@ -0,0 +1,233 @@
+package com.rodusek.graphingcalculator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>PolyCache</code> class is a bounded cache of parsed polynomials, so that plotting the
+ * same expression again doesn't parse it or derive it again.
+ *
+ * <p>Each entry maps the text of an expression and its variable to the parsed <code>Poly</code>,
+ * its first and second derivatives, and its double-precision copy for plotting. The derivatives and
+ * the copy are only built the first time they are asked for. When the cache is full, the entry
+ * that was used least recently is evicted.</p>
+ *
+ * <p>The text is normalized before it is looked up by dropping the whitespace that the parser would
+ * skip, so expressions that differ only in spacing share an entry. Parse errors aren't cached.</p>
+ *
+ * <p>The cache may be used from several threads at once. The cached polynomials are shared between
+ * everyone who looks them up, so they must not be modified.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see CalculatorModel#getCache()
+ */
+public final class PolyCache {
+    
+    private final int                    capacity;
+    private final Map<String, Entry>     entries;
+    private final AtomicLong             hits   = new AtomicLong();
+    private final AtomicLong             misses = new AtomicLong();
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Constructs a new, empty <code>PolyCache</code>
+     *
+     * @param capacity the most entries to hold
+     * @throws IllegalArgumentException if the capacity isn't positive
+     */
+    public PolyCache(final int capacity) throws IllegalArgumentException{
+        if(capacity < 1) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        // An access ordered map keeps its least recently used entry first
+        this.entries  = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+        
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, PolyCache.Entry> eldest) {
+                return this.size() > PolyCache.this.capacity;
+            }
+        };
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Returns the entry for a string, parsing it if it isn't cached. The string is parsed
+     * outside of the lock, so a slow parse doesn't hold up other threads.
+     *
+     * @param line string in the form of a mathematical equation
+     * @param variable the variable character to be used
+     * @return the cached entry
+     * @throws PolyException if too many operands are given for the number of operands
+     * @throws OperatorException if too many operators are given for the number of operators
+     */
+    public Entry get(final String line, final String variable) throws OperatorException, PolyException{
+        final String key = normalize(line, variable);
+        Entry entry;
+        synchronized(this.entries) {
+            entry = this.entries.get(key);
+        }
+        if(entry != null) {
+            this.hits.incrementAndGet();
+            return entry;
+        }
+        this.misses.incrementAndGet();
+        final Entry parsed = new Entry(new Poly(line, variable));
+        synchronized(this.entries) {
+            // Keep the entry of another thread that parsed the same string first
+            entry = this.entries.get(key);
+            if(entry == null) {
+                this.entries.put(key, parsed);
+                entry = parsed;
+            }
+        }
+        return entry;
+    }
+    
+    /**
+     * Removes every entry from the cache. The counters are kept.
+     */
+    public void clear() {
+        synchronized(this.entries) {
+            this.entries.clear();
+        }
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Returns the number of entries in the cache
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized(this.entries) {
+            return this.entries.size();
+        }
+    }
+    
+    /**
+     * Returns the most entries the cache holds
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+    
+    /**
+     * Returns the number of lookups that were found in the cache
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+    
+    /**
+     * Returns the number of lookups that had to be parsed
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Returns the key of a string and variable. Whitespace is dropped, except before a '-' at the
+     * start of the string, where it stops the '-' from being read as a negative sign, and between
+     * two digits, where it separates two numbers; there a single space is kept.
+     */
+    private static String normalize(final String line, final String variable) {
+        final StringBuilder key = new StringBuilder(line.length() + 2);
+        key.append(variable).append(':');
+        final int len = line.length();
+        int i = 0;
+        while(i < len) {
+            final char c = line.charAt(i);
+            if(!Character.isWhitespace(c)) {
+                key.append(c);
+                i++;
+                continue;
+            }
+            final int start = i;
+            while(i < len && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if(i < len && (start == 0 ? line.charAt(i) == '-' : isDigit(line.charAt(start-1)) && isDigit(line.charAt(i)))) {
+                key.append(' ');
+            }
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Returns whether a character is a decimal digit
+     */
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * The <code>Entry</code> class holds a parsed polynomial and its derivative chain. The
+     * derivatives and the double-precision copy are built once, the first time they are asked for.
+     * The parsed polynomial is read without locking, so looking it up never waits on a thread that
+     * is deriving or compiling it; each lazy slot is only locked while it is being filled in.
+     */
+    public static final class Entry {
+        
+        private final Poly              poly;                       // the parsed polynomial
+        private volatile Poly           first    = null;            // its first derivative
+        private volatile Poly           second   = null;            // its second derivative
+        private volatile CompiledPoly   compiled = null;            // double-precision copy of the polynomial
+        private final Object            derivativeLock = new Object();
+        private final Object            compileLock    = new Object();
+        
+        /**
+         * Constructs a new entry for a parsed polynomial
+         */
+        private Entry(final Poly poly) {
+            this.poly = poly;
+        }
+        
+        /**
+         * Returns the polynomial or one of its derivatives, deriving it if it hasn't been yet
+         *
+         * @param n the function key: <code>KEY_POLYNOMIAL</code>, <code>KEY_FIRST_DERIVATIVE</code>
+         *          or <code>KEY_SECOND_DERIVATIVE</code>
+         * @return the polynomial or its n-th derivative
+         */
+        public Poly getPoly(final int n) {
+            if(n == CalculatorModel.KEY_POLYNOMIAL) return this.poly;
+            final Poly derivative = n == CalculatorModel.KEY_FIRST_DERIVATIVE ? this.first : this.second;
+            if(derivative != null) return derivative;
+            synchronized(this.derivativeLock) {
+                if(this.first == null) this.first = this.poly.diff();
+                if(n == CalculatorModel.KEY_FIRST_DERIVATIVE) return this.first;
+                if(this.second == null) this.second = this.first.diff();
+                return this.second;
+            }
+        }
+        
+        /**
+         * Returns the double-precision copy of the polynomial, compiling it if it hasn't been yet
+         *
+         * @return the compiled polynomial
+         */
+        public CompiledPoly getCompiled() {
+            final CompiledPoly compiled = this.compiled;
+            if(compiled != null) return compiled;
+            synchronized(this.compileLock) {
+                if(this.compiled == null) this.compiled = this.poly.compileDouble();
+                return this.compiled;
+            }
+        }
+    }
+}
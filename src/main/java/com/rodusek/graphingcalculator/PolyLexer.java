@@ -0,0 +1,136 @@
+package com.rodusek.graphingcalculator;
+
+import java.math.BigInteger;
+
+/**
+ * The <code>PolyLexer</code> class splits a polynomial equation into typed tokens in a single
+ * pass over its characters.
+ *
+ * <p>Operators are returned as the shared <code>Operator</code> constants, and integer literals
+ * are read straight into a <code>long</code>, falling back to a <code>BigInteger</code> only when
+ * they are too long, so lexing allocates almost nothing. The index of the current token is kept
+ * so that errors can report where they were found.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see PolyParser
+ */
+final class PolyLexer {
+    
+    /**
+     * The types of token
+     */
+    enum Token { NUMBER, VARIABLE, IMAGINARY, OPERATOR, END }
+    
+    private static final long LONG_LIMIT = (Long.MAX_VALUE - 9) / 10; // Largest value another digit can be appended to
+    
+    private String       line;
+    private char         variable;
+    private int          pos      = 0;    // index of the next character
+    private int          start    = 0;    // index of the current token
+    private long         value    = 0;    // value of the current number token
+    private BigInteger   bigValue = null; // value of the current number token if too large for a long
+    private Operator     operator = null; // the current operator token
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Starts splitting a new string into tokens, so that the lexer can be reused
+     *
+     * @param line the string to split into tokens
+     * @param variable the variable character, or an empty string if there is none
+     */
+    void reset(final String line, final String variable) {
+        this.line     = line;
+        this.variable = variable.isEmpty() ? '\0' : variable.charAt(0);
+        this.pos      = 0;
+        this.start    = 0;
+        this.bigValue = null;
+        this.operator = null;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Reads the next token, skipping any whitespace before it
+     *
+     * @return the type of the token, or <code>END</code> at the end of the string
+     * @throws PolyException if a character isn't a valid operator, variable, or operand
+     */
+    Token next() throws PolyException {
+        final String line = this.line;
+        final int    len  = line.length();
+        while(this.pos < len && Character.isWhitespace(line.charAt(this.pos))) {
+            this.pos++;
+        }
+        this.start = this.pos;
+        if(this.pos == len) return Token.END;
+        
+        final char c = line.charAt(this.pos++);
+        if(c == this.variable) return Token.VARIABLE;
+        switch(c) {
+            case 'i': return Token.IMAGINARY;
+            case '(': this.operator = Operator.LEFT_PARENTHESIS;  return Token.OPERATOR;
+            case ')': this.operator = Operator.RIGHT_PARENTHESIS; return Token.OPERATOR;
+            case '+': this.operator = Operator.ADD;               return Token.OPERATOR;
+            case '-': this.operator = Operator.SUBTRACT;          return Token.OPERATOR;
+            case '*': this.operator = Operator.MULTIPLY;          return Token.OPERATOR;
+            case '/': this.operator = Operator.DIVIDE;            return Token.OPERATOR;
+            case '^': this.operator = Operator.EXPONENT;          return Token.OPERATOR;
+            default:  break;
+        }
+        if(!isDigit(c)) throw new PolyException(PolyException.Flags.INVALID_TOKEN, this.start);
+        
+        // Accumulate the digits in a long until another would overflow it
+        long v = c - '0';
+        while(this.pos < len && v <= LONG_LIMIT) {
+            final char d = line.charAt(this.pos);
+            if(!isDigit(d)) break;
+            v = v * 10 + (d - '0');
+            this.pos++;
+        }
+        this.value    = v;
+        this.bigValue = null;
+        if(this.pos < len && isDigit(line.charAt(this.pos))) {
+            while(this.pos < len && isDigit(line.charAt(this.pos))) {
+                this.pos++;
+            }
+            this.bigValue = new BigInteger(line.substring(this.start, this.pos));
+        }
+        return Token.NUMBER;
+    }
+    
+    /**
+     * Returns the index of the first character of the current token
+     *
+     * @return the index
+     */
+    int getPosition() {
+        return this.start;
+    }
+    
+    /**
+     * Returns the current operator token
+     *
+     * @return the operator
+     */
+    Operator getOperator() {
+        return this.operator;
+    }
+    
+    /**
+     * Returns the value of the current number token
+     *
+     * @return the value
+     */
+    Rational getNumber() {
+        return this.bigValue == null ? new Rational(this.value) : new Rational(this.bigValue, BigInteger.ONE);
+    }
+    
+    /**
+     * Returns whether a character is a decimal digit
+     */
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+}
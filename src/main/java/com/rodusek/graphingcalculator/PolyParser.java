@@ -0,0 +1,226 @@
+package com.rodusek.graphingcalculator;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * The <code>PolyParser</code> class parses polynomial equations written in regular mathematical
+ * notation into <code>Poly</code> objects.
+ *
+ * <p>A parser keeps its lexer and its operator and operand stacks between parses, and resets them
+ * rather than allocating new ones, so parsing many strings with the same parser allocates little
+ * beyond the parsed expressions. The stacks are plain arrays with no synchronization, so a parser
+ * must not be shared between threads; each thread should use its own, and parsers on different
+ * threads share no mutable state.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see Poly#Poly(String, String)
+ */
+public final class PolyParser {
+    
+    private static final int INITIAL_DEPTH = 16; // Starting capacity of each stack
+    
+    private final PolyLexer input         = new PolyLexer();
+    private Operator[]      operator      = new Operator[INITIAL_DEPTH];
+    private int[]           operatorPosition = new int[INITIAL_DEPTH]; // index of each operator in the string
+    private Expression[]    operand       = new Expression[INITIAL_DEPTH];
+    private int             operatorCount = 0;
+    private int             operandCount  = 0;
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Parses a string into a new <code>Poly</code>.
+     * The string must be entered in the form of a mathematical equation,
+     * and may use the operators '+' (add), '-' (subtract), '/' (divide),
+     * '*' (multiply), '^' (exponent), and may also include brackets.
+     * The string will parse and calculate following the BEDMAS order of operations
+     *
+     * @param line string in the form of a mathematical equation
+     * @param variable the variable character to be used
+     * @return the parsed polynomial
+     * @throws PolyException if too many operands are given for the number of operands
+     * @throws OperatorException if too many operators are given for the number of operators
+     */
+    public Poly parse(final String line, final String variable) throws OperatorException, PolyException{
+        if(variable.length()>1)throw new PolyException(PolyException.Flags.BAD_VARIABLE);
+        try {
+            return Poly.valueOf(this.parseExpression(line, variable), variable);
+        } finally {
+            // Release the operands so the parser doesn't hold on to the last expression
+            Arrays.fill(this.operand, 0, this.operandCount, null);
+            this.operatorCount = 0;
+            this.operandCount  = 0;
+        }
+    }
+    
+    /**
+     * Parses a string into its expression tree, reduced as a balanced tree
+     */
+    private Expression parseExpression(final String line, final String variable) throws OperatorException, PolyException{
+        final Expression      result;
+        boolean               lastVar  = false;
+        
+        final PolyLexer input = this.input;
+        input.reset(line, variable);
+        PolyLexer.Token token = input.next();
+        
+        // ---------------------------------------------------------------------------------
+        
+        // Check to see if the first value is negative
+        if (line.startsWith("-")) {
+            // Read the first operand as a negative number.
+            token = input.next();
+        
+            this.pushOperand(new Expression.Const(Complex.NEG_ONE));
+            this.pushOperator(Operator.MULTIPLY, 0);
+        }
+        
+        // ---------------------------------------------------------------------------------
+        
+        // Parse the remaining input
+        for(; token != PolyLexer.Token.END; token = input.next()) {
+            final int position = input.getPosition();
+            switch(token) {
+            // If the value is a variable, create a new poly equal to x
+            case VARIABLE:
+                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND, position);
+                this.pushOperand(new Expression.Var());
+                lastVar = true;
+                break;
+            // If the value is imaginary, create a new poly equal to i
+            case IMAGINARY:
+                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND, position);
+                this.pushOperand(new Expression.Const(new Complex(Rational.ZERO, Rational.ONE)));
+                lastVar = true;
+                break;
+            // If the value is numeric, read it as a constant
+            case NUMBER:
+                if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND, position);
+                this.pushOperand(new Expression.Const(new Complex(input.getNumber())));
+                lastVar = true;
+                break;
+            // Otherwise the value is an operator
+            default:
+                final Operator op = input.getOperator();
+                // Always push left brackets down
+                if(op == Operator.LEFT_PARENTHESIS) {
+                    if(lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERAND, position);
+                    this.pushOperator(op, position);
+                }
+                // If right bracket, pop and perform operations until left bracket is met
+                else if(op == Operator.RIGHT_PARENTHESIS) {
+                    while (this.operatorCount > 0 && this.peekOperator() != Operator.LEFT_PARENTHESIS) {
+                        try {
+                            this.operate();
+                        } catch (final Exception e) {
+                            throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR, position);
+                        }
+                    }
+                    if(this.operatorCount == 0) {
+                        throw new OperatorException(OperatorException.Flags.NO_LEFT_PARENTHESIS, position);
+                    }
+                    this.popOperator();
+                }
+                // Otherwise it's a new operator, so push it down
+                else {
+                    if(!lastVar)throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR, position);
+        
+                    while(this.operatorCount > 0 && op.precedes(this.peekOperator())) {
+                        this.operate();
+                    }
+                    this.pushOperator(op, position);
+                    lastVar = false;
+                }
+                break;
+            }
+        }
+        
+        // ---------------------------------------------------------------------------------
+        
+        while (this.operatorCount > 0) {
+            try {
+                this.operate();
+            } catch (final EmptyStackException e) {
+                throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR, line.length());
+            }
+        }
+        if(this.operandCount == 0)
+            throw new PolyException(PolyException.Flags.NO_INPUT);
+        result = this.popOperand().balance();
+        
+        if(this.operandCount > 0)
+            throw new PolyException(PolyException.Flags.UNBALANCED_OPERATOR, line.length());
+        return result;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Performs mathematical operation popped from the operator stack, using the top
+     * two operands from the operand stack.
+     * The result is pushed back onto the operand stack.
+     *
+     * @throws OperatorException An operator error, or a left parenthesis that was never closed
+     * @throws EmptyStackException if there are too few operands for the operator
+     */
+    private void operate() throws OperatorException{
+        final Operator op = this.popOperator();
+        if(op == Operator.LEFT_PARENTHESIS) {
+            throw new OperatorException(OperatorException.Flags.NO_RIGHT_PARENTHESIS, this.operatorPosition[this.operatorCount]);
+        }
+        final Expression q = this.popOperand();
+        final Expression p = this.popOperand();
+        this.pushOperand((Expression) op.perform(p, q));
+    }
+    
+    /**
+     * Pushes an operator and its index in the string onto the operator stack, doubling the
+     * stack if it is full
+     */
+    private void pushOperator(final Operator op, final int position) {
+        if(this.operatorCount == this.operator.length) {
+            this.operator         = Arrays.copyOf(this.operator, this.operatorCount * 2);
+            this.operatorPosition = Arrays.copyOf(this.operatorPosition, this.operatorCount * 2);
+        }
+        this.operatorPosition[this.operatorCount] = position;
+        this.operator[this.operatorCount++]       = op;
+    }
+    
+    /**
+     * Removes and returns the operator at the top of the operator stack
+     */
+    private Operator popOperator() throws EmptyStackException{
+        if(this.operatorCount == 0) throw new EmptyStackException();
+        return this.operator[--this.operatorCount];
+    }
+    
+    /**
+     * Returns the operator at the top of the operator stack without removing it
+     */
+    private Operator peekOperator() throws EmptyStackException{
+        if(this.operatorCount == 0) throw new EmptyStackException();
+        return this.operator[this.operatorCount - 1];
+    }
+    
+    /**
+     * Pushes an operand onto the operand stack, doubling the stack if it is full
+     */
+    private void pushOperand(final Expression e) {
+        if(this.operandCount == this.operand.length) {
+            this.operand = Arrays.copyOf(this.operand, this.operandCount * 2);
+        }
+        this.operand[this.operandCount++] = e;
+    }
+    
+    /**
+     * Removes and returns the operand at the top of the operand stack
+     */
+    private Expression popOperand() throws EmptyStackException{
+        if(this.operandCount == 0) throw new EmptyStackException();
+        final Expression e = this.operand[--this.operandCount];
+        this.operand[this.operandCount] = null;
+        return e;
+    }
+}
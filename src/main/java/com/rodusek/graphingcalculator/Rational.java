@@ -10,6 +10,8 @@ import java.util.StringTokenizer;
  * <p>It can be constructed without parameters, at which case it is considered 0, otherwise it takes two parameters or a string</p>
  * <p>The class also contains static constants for commonly used Rational values (1/1, 0/1, -1/0)</p>
  * <p>As of version 2.0, it supports BigInteger values so that the rational can be any size</p>
+ * <p>Values are stored as longs while they fit, and are only promoted to BigInteger when an
+ * operation overflows</p>
  * 
  * @author Matthew Rodusek
  * @version 2.5, 2013-11-27
@@ -23,8 +25,15 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
     public static final Rational ZERO         = new Rational(0);
     public static final Rational NEG_ONE     = new Rational(-1);
     
-    private BigInteger num = BigInteger.ZERO; // Numerator
-    private BigInteger den = BigInteger.ONE;  // Denominator
+    private static final long DOUBLE_EXACT     = 1L << 53; // Largest range of exactly representable longs
+    private static final int  MIN_ULP_EXPONENT = -1074;    // Exponent of the smallest subnormal double
+    
+    // While both values fit in a long they are stored in lnum/lden and num/den are null.
+    // Once an operation overflows, the value is promoted to BigInteger and stored in num/den.
+    private long       lnum = 0;    // Numerator (long form)
+    private long       lden = 1;    // Denominator (long form)
+    private BigInteger num  = null; // Numerator (BigInteger form)
+    private BigInteger den  = null; // Denominator (BigInteger form)
     
 
     // ---------------------------------------------------------------------------------
@@ -34,7 +43,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * 
      */
     public Rational(){
-        this.num = BigInteger.ZERO; this.den = BigInteger.ONE;
+        this.lnum = 0; this.lden = 1;
     }
     
     /**
@@ -44,7 +53,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @param num the value in the numerator
      */
     public Rational(final long num){
-        this.num = BigInteger.valueOf(num); this.den = BigInteger.ONE;
+        this.normalize(num, 1);
     }
     
     /**
@@ -57,9 +66,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     public Rational(final long num, final long den) throws IllegalArgumentException{
         if(den==0) throw new IllegalArgumentException("Denominator can't be zero");
-        this.num = BigInteger.valueOf(num);
-        this.den = BigInteger.valueOf(den);
-        this.normalize();
+        this.normalize(num, den);
     }
     
     /**
@@ -71,10 +78,8 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @throws IllegalArgumentException if b = 0
      */
     public Rational(final BigInteger num, final BigInteger den) throws IllegalArgumentException{
-        if(den.equals(BigInteger.ZERO)) throw new IllegalArgumentException("Denominator can't be zero");
-        this.num = num;
-        this.den = den;
-        this.normalize();
+        if(den.signum()==0) throw new IllegalArgumentException("Denominator can't be zero");
+        this.normalize(num, den);
     }
     
     /**
@@ -85,8 +90,10 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @since 1.5
      */
     public Rational(final Rational other) {
-        this.num = other.num;
-        this.den = other.den;
+        this.lnum = other.lnum;
+        this.lden = other.lden;
+        this.num  = other.num;
+        this.den  = other.den;
     }
     
     /**
@@ -100,13 +107,14 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
         StringTokenizer ST = new StringTokenizer(line,"/ ");
         if(ST.countTokens()>2 || ST.countTokens()<1) throw new RationalException(RationalException.Flags.BAD_INPUT);
         String s = ST.nextToken();
-        this.num = new BigInteger(s);
+        BigInteger num = new BigInteger(s);
+        BigInteger den = BigInteger.ONE;
         if(ST.hasMoreTokens()){
             s = ST.nextToken();
-            this.den = new BigInteger(s);
-            if(this.den.equals(BigInteger.ZERO)) throw new RationalException(RationalException.Flags.DIVISION_BY_ZERO);
+            den = new BigInteger(s);
+            if(den.signum()==0) throw new RationalException(RationalException.Flags.DIVISION_BY_ZERO);
         }
-        this.normalize();
+        this.normalize(num, den);
     }
     
     // ---------------------------------------------------------------------------------
@@ -120,9 +128,16 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
     @Override
     public Rational add(final Rational other){
         Rational res = new Rational();
-        res.num = this.num.multiply(other.den).add(this.den.multiply(other.num));
-        res.den = this.den.multiply(other.den);
-        res.normalize();
+        if(this.num==null && other.num==null) {
+            try {
+                res.addLong(this.lnum, this.lden, other.lnum, other.lden);
+                return res;
+            } catch(ArithmeticException e) {
+                // Overflowed, fall through to the BigInteger path
+            }
+        }
+        res.normalize(this.getNumerator().multiply(other.getDenominator()).add(this.getDenominator().multiply(other.getNumerator())),
+                      this.getDenominator().multiply(other.getDenominator()));
         return res;
     }
     
@@ -135,9 +150,17 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
     @Override
     public Rational sub(final Rational other){
         Rational res = new Rational();
-        res.num = this.num.multiply(other.den).subtract(this.den.multiply(other.num));
-        res.den = this.den.multiply(other.den);
-        res.normalize();
+        if(this.num==null && other.num==null) {
+            try {
+                // lnum is never Long.MIN_VALUE, so negating it can't overflow
+                res.addLong(this.lnum, this.lden, -other.lnum, other.lden);
+                return res;
+            } catch(ArithmeticException e) {
+                // Overflowed, fall through to the BigInteger path
+            }
+        }
+        res.normalize(this.getNumerator().multiply(other.getDenominator()).subtract(this.getDenominator().multiply(other.getNumerator())),
+                      this.getDenominator().multiply(other.getDenominator()));
         return res;
     }
     
@@ -150,9 +173,16 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
     @Override
     public Rational mul(final Rational other){
         Rational res = new Rational();
-        res.num = this.num.multiply(other.num);
-        res.den = this.den.multiply(other.den);
-        res.normalize();
+        if(this.num==null && other.num==null) {
+            try {
+                res.mulLong(this.lnum, this.lden, other.lnum, other.lden);
+                return res;
+            } catch(ArithmeticException e) {
+                // Overflowed, fall through to the BigInteger path
+            }
+        }
+        res.normalize(this.getNumerator().multiply(other.getNumerator()),
+                      this.getDenominator().multiply(other.getDenominator()));
         return res;
     }
     
@@ -165,15 +195,26 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     @Override
     public Rational div(final Rational other) throws RationalException {
-        if(other.num.equals(BigInteger.ZERO)) throw new RationalException(RationalException.Flags.DIVISION_BY_ZERO);
+        if(other.signum()==0) throw new RationalException(RationalException.Flags.DIVISION_BY_ZERO);
         Rational res = new Rational();
-        res.num = this.num.multiply(other.den);
-        res.den = this.den.multiply(other.num);
-        res.normalize();
+        if(this.num==null && other.num==null) {
+            try {
+                // Multiply by the reciprocal, keeping the denominator positive
+                if(other.lnum < 0) res.mulLong(this.lnum, this.lden, -other.lden, -other.lnum);
+                else               res.mulLong(this.lnum, this.lden,  other.lden,  other.lnum);
+                return res;
+            } catch(ArithmeticException e) {
+                // Overflowed, fall through to the BigInteger path
+            }
+        }
+        res.normalize(this.getNumerator().multiply(other.getDenominator()),
+                      this.getDenominator().multiply(other.getNumerator()));
         return res;
     }
     /**
-     * Evaluates this<sup>other</sup> and returns the result
+     * Evaluates this<sup>other</sup> and returns the result.
+     * <p>The numerator and denominator are raised separately by repeated squaring. They have
+     * no common factor, so neither have their powers, and the result needs no reduction.</p>
      * 
      * @param other the value to be exponentiated (must be whole number)
      * @return the calculated value
@@ -181,12 +222,12 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     @Override
     public Rational exp(final Rational other) throws RationalException {
-        if(!other.den.equals(BigInteger.ONE)) throw new RationalException(RationalException.Flags.INVALID_EXPONENT);
+        if(!other.isInteger() || other.isNegative()) throw new RationalException(RationalException.Flags.INVALID_EXPONENT);
+        final BigInteger e = other.getNumerator();
+        if(e.bitLength() > 31) throw new RationalException(RationalException.Flags.INVALID_EXPONENT);
         
         Rational res = new Rational();
-        res.num = this.num.pow(this.num.intValue());
-        res.den = this.den;
-        res.normalize();
+        res.normalize(this.getNumerator().pow(e.intValue()), this.getDenominator().pow(e.intValue()), false);
         return res;
     }
     
@@ -211,7 +252,8 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     public Rational negate() {
         Rational res = new Rational(this);
-        res.num = this.num.negate();
+        if(this.num==null) res.lnum = -this.lnum;
+        else               res.normalize(this.num.negate(), this.den);
         return res;
     }
     
@@ -222,9 +264,9 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     public Rational ceil() {
         Rational res = new Rational(this);
-        if(!res.den.equals(BigInteger.ONE)) {
-            res.num = res.num.divide(res.den).add(BigInteger.ONE);
-            res.den = BigInteger.ONE;
+        if(!this.isInteger()) {
+            if(this.num==null) res.normalize(this.lnum / this.lden + 1, 1);
+            else               res.normalize(this.num.divide(this.den).add(BigInteger.ONE), BigInteger.ONE);
         }
         return res;
     }
@@ -236,9 +278,9 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      */
     public Rational floor() {
         Rational res = new Rational(this);
-        if(!res.den.equals(BigInteger.ONE)) {
-            res.num = res.num.divide(res.den);
-            res.den = BigInteger.ONE;
+        if(!this.isInteger()) {
+            if(this.num==null) res.normalize(this.lnum / this.lden, 1);
+            else               res.normalize(this.num.divide(this.den), BigInteger.ONE);
         }
         return res;
     }
@@ -250,7 +292,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @return the numerator value (num)
      */
     public BigInteger getNumerator() {
-        return num;
+        return this.num==null ? BigInteger.valueOf(this.lnum) : this.num;
     }
     
     /**
@@ -259,7 +301,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @return the denominator value (den)
      */
     public BigInteger getDenominator() {
-        return den;
+        return this.den==null ? BigInteger.valueOf(this.lden) : this.den;
     }
     
     /**
@@ -268,10 +310,61 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @return the evaluated polynomial
      */
     public BigDecimal eval() {
-        
+        if(this.num==null)
+            return BigDecimal.valueOf(this.lnum).divide(BigDecimal.valueOf(this.lden),10, RoundingMode.HALF_UP);
         return new BigDecimal(this.num).divide(new BigDecimal(this.den),10, RoundingMode.HALF_UP);
     }
 
+    /**
+     * Converts this <code>Rational</code> to the nearest <code>double</code> value,
+     * rounding half to even. Unlike {@link #eval()} no intermediate decimal is created, 
+     * so the result is the correctly rounded IEEE 754 value of num/den.
+     * 
+     * @return the value of this Rational as a double
+     */
+    public double doubleValue() {
+        // Both values are exact as doubles, and IEEE division is correctly rounded
+        if(this.num==null && Math.abs(this.lnum) <= DOUBLE_EXACT && this.lden <= DOUBLE_EXACT)
+            return (double) this.lnum / (double) this.lden;
+        return doubleValue(this.getNumerator(), this.getDenominator());
+    }
+    
+    /**
+     * Converts the fraction n/d to the nearest <code>double</code> value, rounding half to even.
+     * The fraction doesn't need to be in lowest terms.
+     * 
+     * @param n the numerator
+     * @param d the denominator, which must be positive
+     * @return the value of n/d as a double
+     * @see #doubleValue()
+     */
+    static double doubleValue(final BigInteger n, final BigInteger d) {
+        if(n.signum()==0) return 0.0;
+        if(n.bitLength() <= 53 && d.bitLength() <= 53)
+            return (double) n.longValue() / (double) d.longValue();
+        final BigInteger a = n.abs();
+        
+        // Scale so the quotient holds 55-56 significant bits (53 + guard + sticky) or, for
+        // subnormal results, enough bits to round at 2^-1074
+        final int shift = Math.max(a.bitLength() - d.bitLength() - 55, MIN_ULP_EXPONENT - 2);
+        final BigInteger[] qr = shift > 0 ? a.divideAndRemainder(d.shiftLeft(shift)) 
+                                          : a.shiftLeft(-shift).divideAndRemainder(d);
+        long q = qr[0].longValue();
+        if(qr[1].signum()!=0) q |= 1; // sticky bit for the discarded remainder
+        
+        // Round half to even, dropping the bits below the result's ulp
+        final int bits     = 64 - Long.numberOfLeadingZeros(q);
+        final int ulpExp   = Math.max(shift + bits - 53, MIN_ULP_EXPONENT);
+        final int drop     = ulpExp - shift;
+        final long half    = 1L << (drop - 1);
+        final long rem     = q & ((1L << drop) - 1);
+        long mantissa      = q >>> drop;
+        if(rem > half || (rem == half && (mantissa & 1)==1)) mantissa++;
+        
+        final double res = Math.scalb((double) mantissa, ulpExp);
+        return n.signum() < 0 ? -res : res;
+    }
+    
     // ---------------------------------------------------------------------------------
     
     /**
@@ -280,7 +373,7 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @return true if the rational is positive, false if negative
      */
     public boolean isPositive() {
-        return this.num.compareTo(BigInteger.ZERO) > 0;
+        return this.signum() > 0;
     }
     
     /**
@@ -289,7 +382,25 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
      * @return true if the rational is negative, false if positive
      */
     public boolean isNegative() {
-        return this.num.compareTo(BigInteger.ZERO) < 0;
+        return this.signum() < 0;
+    }
+    
+    /**
+     * Checks whether the <code>Rational</code> is a whole number
+     * 
+     * @return true if the denominator is 1, false otherwise
+     */
+    public boolean isInteger() {
+        return this.num==null ? this.lden==1 : this.den.equals(BigInteger.ONE);
+    }
+    
+    /**
+     * Returns the signum function of this <code>Rational</code>
+     * 
+     * @return -1, 0 or 1 as the value of this Rational is negative, zero or positive
+     */
+    public int signum() {
+        return this.num==null ? Long.signum(this.lnum) : this.num.signum();
     }
     
     /**
@@ -306,12 +417,29 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
         // If comparing against other Rational
         if(this.getClass()==other.getClass()) {
             Rational otherRational = (Rational) other;
+            // Both forms are normalized, and values are only kept as BigIntegers when
+            // they don't fit in a long, so mismatched forms can't be equal
+            if(this.num==null && otherRational.num==null)
+                return (this.lnum==otherRational.lnum && this.lden==otherRational.lden);
+            if(this.num==null || otherRational.num==null)
+                return false;
             return (this.num.equals(otherRational.num) && this.den.equals(otherRational.den));
         }
         // Otherwise false
         else return false;
     }
     
+    /**
+     * Returns a hash code for this <code>Rational</code>, consistent with <code>equals</code>
+     * 
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        if(this.num==null) return 31 * Long.hashCode(this.lnum) + Long.hashCode(this.lden);
+        return 31 * this.num.hashCode() + this.den.hashCode();
+    }
+    
     // ---------------------------------------------------------------------------------
     
     /**
@@ -326,32 +454,141 @@ public class Rational implements Comparable<Rational>, Arithmetic<Rational>{
     @Override 
     public String toString(){
         // If the denominator is 1, display only the numerator. Otherwise display in the form of a/b
+        if(this.num==null)
+            return this.lden==1 ? this.lnum + "": this.lnum + "/" + this.lden;
         return this.den.equals(BigInteger.ONE) ? this.num + "": this.num + "/" + this.den;
     }
     
     // ---------------------------------------------------------------------------------
     
+    /**
+     * Stores the sum of a/b and c/d in lowest terms, using long arithmetic only.
+     * Denominators must be positive.
+     * 
+     * @throws ArithmeticException if an intermediate value overflows a long
+     */
+    private void addLong(final long a, final long b, final long c, final long d) throws ArithmeticException {
+        // Henrici's method: only the common part of the denominators can remain as a factor
+        final long g = gcd(b, d);
+        if(g==1) {
+            this.normalize(Math.addExact(Math.multiplyExact(a, d), Math.multiplyExact(b, c)), 
+                           Math.multiplyExact(b, d), false);
+        }else {
+            final long t  = Math.addExact(Math.multiplyExact(a, d / g), Math.multiplyExact(c, b / g));
+            if(t==Long.MIN_VALUE) throw new ArithmeticException("long overflow");
+            final long g2 = gcd(Math.abs(t), g);
+            this.normalize(t / g2, Math.multiplyExact(b / g, d / g2), false);
+        }
+    }
+    
+    /**
+     * Stores the product of a/b and c/d in lowest terms, using long arithmetic only.
+     * Denominators must be positive.
+     * 
+     * @throws ArithmeticException if an intermediate value overflows a long
+     */
+    private void mulLong(final long a, final long b, final long c, final long d) throws ArithmeticException {
+        // Cross-cancel before multiplying so the product is already reduced
+        final long g1 = gcd(Math.abs(a), d);
+        final long g2 = gcd(Math.abs(c), b);
+        this.normalize(Math.multiplyExact(a / g1, c / g2), Math.multiplyExact(b / g2, d / g1), false);
+    }
+    
+    /**
+     * Normalizes the numerator and denominator to be in proper format
+     * 
+     */
+    private void normalize(long num, long den){
+        this.normalize(num, den, true);
+    }
+    
+    /**
+     * Stores num/den in the long form, reducing it to lowest terms if <code>reduce</code>
+     * is set. Values that can't be represented are promoted to BigInteger form.
+     */
+    private void normalize(long num, long den, boolean reduce){
+        // Long.MIN_VALUE can't be negated, so it is only kept in BigInteger form
+        if(num==Long.MIN_VALUE || den==Long.MIN_VALUE) {
+            this.normalize(BigInteger.valueOf(num), BigInteger.valueOf(den));
+            return;
+        }
+        if(den < 0) {
+            num = -num;
+            den = -den;
+        }
+        if(num==0) {
+            den = 1;
+        }else if(reduce) {
+            final long denom = gcd(Math.abs(num), den);
+            num /= denom;
+            den /= denom;
+        }
+        this.lnum = num;
+        this.lden = den;
+        this.num  = null;
+        this.den  = null;
+    }
+    
     /**
      * Normalizes the numerator and denominator to be in proper format
      * 
      */
-    private void normalize(){
-        BigInteger denom = this.num.gcd(this.den);
-        this.num = this.num.divide(denom);
-        this.den = this.den.divide(denom);
-        if(this.den.compareTo(BigInteger.ZERO)<0){
-            this.den=this.den.negate(); 
-            this.num=this.num.negate();
+    private void normalize(BigInteger num, BigInteger den){
+        this.normalize(num, den, true);
+    }
+    
+    /**
+     * Stores num/den, reducing it to lowest terms if <code>reduce</code> is set. 
+     * Values that fit are demoted back to the long form.
+     */
+    private void normalize(BigInteger num, BigInteger den, boolean reduce){
+        if(reduce) {
+            BigInteger denom = num.gcd(den);
+            num = num.divide(denom);
+            den = den.divide(denom);
+        }
+        if(den.signum()<0){
+            den=den.negate(); 
+            num=num.negate();
+        }
+        // Demote back to the long form whenever the value fits
+        if(num.bitLength() < 64 && den.bitLength() < 64 && num.longValue()!=Long.MIN_VALUE) {
+            this.lnum = num.longValue();
+            this.lden = den.longValue();
+            this.num  = null;
+            this.den  = null;
+        }else {
+            this.num  = num;
+            this.den  = den;
         }
     }
     
+    /**
+     * Calculates the greatest common divisor of two non-negative long values
+     * using the binary GCD algorithm. gcd(0, b) is b.
+     */
+    private static long gcd(long a, long b){
+        if(a==0) return b;
+        if(b==0) return a;
+        final int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+        do {
+            b >>= Long.numberOfTrailingZeros(b);
+            if(a > b) { final long t = b; b = a; a = t; }
+            b -= a;
+        } while(b != 0);
+        return a << shift;
+    }
+    
     /*
      * (non-Javadoc)
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
     @Override
     public int compareTo(Rational val) {
-        int r = this.num.divide(this.den).compareTo(val.num.divide(val.den));
+        if(this.num==null && val.num==null)
+            return Long.compare(this.lnum / this.lden, val.lnum / val.lden);
+        int r = this.getNumerator().divide(this.getDenominator()).compareTo(val.getNumerator().divide(val.getDenominator()));
         return r;
     }
 
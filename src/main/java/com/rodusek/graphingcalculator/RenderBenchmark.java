@@ -0,0 +1,121 @@
+package com.rodusek.graphingcalculator;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Benchmarks painting the <code>GraphPanel</code> at 4K resolution, drawing its curves through
+ * <code>Graphics2D</code> and with the Wu line renderer, one band at a time and in parallel.
+ * <p>It runs headless, so it measures the software Java2D pipeline, as on a rendering node.
+ * The polynomial, with its derivatives and their imaginary parts, gives six curves. The first
+ * argument replaces the polynomial, and the second sets the oversampling factor.</p>
+ * <p><b>Usage:</b> <code>java -Djava.awt.headless=true com.rodusek.graphingcalculator.RenderBenchmark
+ * [polynomial] [oversampling]</code></p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see WuRenderer
+ */
+public class RenderBenchmark {
+    
+    private static final int    WIDTH      = 3840;
+    private static final int    HEIGHT     = 2160;
+    private static final int    WARMUP     = 10;   // paints before timing
+    private static final int    RUNS       = 30;   // timed paints
+    private static final String POLYNOMIAL = "(x+3*i)^5-40*x^3+2*i*x";
+    
+    public static final void main(String...args) throws Exception {
+        System.setProperty("java.awt.headless", Boolean.TRUE.toString());
+        final String polynomial   = args.length > 0 ? args[0] : POLYNOMIAL;
+        final int    oversampling = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        
+        final CalculatorModel model = new CalculatorModel();
+        final GraphPanel      panel = new GraphPanel(model);
+        final BufferedImage   image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        onEventThread(new Runnable() {
+            @Override
+            public void run() {
+                model.setPoly(new Poly(polynomial));
+                model.setVisibility(CalculatorModel.KEY_COMPLEX_VISIBLE, true);
+                model.setOversampling(oversampling);
+                panel.setSize(WIDTH, HEIGHT);
+                paint(panel, image);
+            }
+        });
+        
+        // Wait for the samples at this size, then fit the boundaries to them
+        final boolean[] computing = { true };
+        while(computing[0]) {
+            Thread.sleep(50);
+            onEventThread(new Runnable() {
+                @Override
+                public void run() {
+                    computing[0] = model.isComputing();
+                }
+            });
+        }
+        onEventThread(new Runnable() {
+            @Override
+            public void run() {
+                model.calculateYBounds();
+            }
+        });
+        
+        System.out.println("Painting " + polynomial + " at " + WIDTH + "x" + HEIGHT +
+                           ", " + oversampling + " sample(s) per column");
+        report("Graphics2D",          model, panel, image, false, false);
+        report("Wu lines, one band",  model, panel, image, true,  false);
+        report("Wu lines, parallel",  model, panel, image, true,  true);
+        System.exit(0);
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Times painting the panel with one of the renderers, and prints the median and best times
+     */
+    private static void report(final String name, final CalculatorModel model, final GraphPanel panel,
+                               final BufferedImage image, final boolean software, final boolean parallel) throws Exception {
+        final long[] times = new long[RUNS];
+        onEventThread(new Runnable() {
+            @Override
+            public void run() {
+                model.setSoftwareRendering(software);
+                model.setParallel(parallel);
+                for(int i = 0; i < WARMUP; i++) {
+                    paint(panel, image);
+                }
+                for(int i = 0; i < RUNS; i++) {
+                    final long start = System.nanoTime();
+                    paint(panel, image);
+                    times[i] = System.nanoTime() - start;
+                }
+            }
+        });
+        Arrays.sort(times);
+        System.out.printf("%-20s median %7.2f ms, best %7.2f ms%n", name, times[RUNS/2] / 1e6, times[0] / 1e6);
+    }
+    
+    /**
+     * Paints the panel into the image
+     */
+    private static void paint(final GraphPanel panel, final BufferedImage image) {
+        final Graphics2D g2d = image.createGraphics();
+        try {
+            panel.paintComponent(g2d);
+        } finally {
+            g2d.dispose();
+        }
+    }
+    
+    /**
+     * Runs a task on the Event Dispatch Thread and waits for it, as the model and panel
+     * must only be used there
+     */
+    private static void onEventThread(final Runnable task) throws Exception {
+        SwingUtilities.invokeAndWait(task);
+    }
+}
@@ -0,0 +1,246 @@
+package com.rodusek.graphingcalculator;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The <code>WuRenderer</code> class draws antialiased line segments straight into the
+ * <code>int[]</code> pixels of an image with Xiaolin Wu's algorithm, as a faster alternative
+ * to the software Java2D pipeline.
+ *
+ * <p>A frame starts from a copy of an opaque background, then the segments are recorded in the
+ * order they are drawn and rasterized together. The image is split into horizontal bands that
+ * are rasterized in parallel; each band copies its rows of the background and draws every
+ * segment that crosses it, clipped to its rows. Bands share no pixels, so they need no locking,
+ * and the segments are blended in the order they were recorded, as if they were drawn
+ * one after another.</p>
+ *
+ * @author Matthew Rodusek
+ * @version 1.0, 2013-11-27
+ * @see GraphPanel
+ */
+final class WuRenderer {
+    
+    private static final int BAND_HEIGHT = 64; // rows of pixels rasterized by each task
+    
+    private BufferedImage frame  = null;          // the image drawn into, of type TYPE_INT_ARGB_PRE
+    private int[]         pixels = null;          // the pixels backing the frame
+    private int[]         background = null;      // the pixels copied into the frame before drawing
+    private int           width  = 0;
+    private int           height = 0;
+    private double        scaleX = 1;             // device pixels per unit of the segment coordinates
+    private double        scaleY = 1;
+    private double[]      segments = new double[256]; // x0, y0, x1, y1 of each segment, in device pixels
+    private int[]         colors   = new int[64];     // RGB color of each segment
+    private int           count    = 0;               // the number of segments recorded
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Starts a new frame over an opaque background. The frame has the size of the background.
+     *
+     * @param background the background, of type <code>TYPE_INT_RGB</code>
+     * @param scaleX the device pixels per unit of the x-coordinates of the segments
+     * @param scaleY the device pixels per unit of the y-coordinates of the segments
+     * @throws IllegalArgumentException if the background isn't of type <code>TYPE_INT_RGB</code>
+     */
+    void begin(final BufferedImage background, final double scaleX, final double scaleY) throws IllegalArgumentException{
+        if(background.getType() != BufferedImage.TYPE_INT_RGB) throw new IllegalArgumentException();
+        this.width  = background.getWidth();
+        this.height = background.getHeight();
+        if(this.frame == null || this.frame.getWidth() != this.width || this.frame.getHeight() != this.height) {
+            this.frame  = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB_PRE);
+            this.pixels = ((DataBufferInt) this.frame.getRaster().getDataBuffer()).getData();
+        }
+        this.background = ((DataBufferInt) background.getRaster().getDataBuffer()).getData();
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.count  = 0;
+    }
+    
+    /**
+     * Records a segment to be drawn in a color
+     *
+     * @param x0 the x-coordinate of the start
+     * @param y0 the y-coordinate of the start
+     * @param x1 the x-coordinate of the end
+     * @param y1 the y-coordinate of the end
+     * @param color the color of the segment
+     */
+    void segment(final double x0, final double y0, final double x1, final double y1, final Color color) {
+        if(this.count*4 == this.segments.length) {
+            this.segments = Arrays.copyOf(this.segments, this.segments.length*2);
+            this.colors   = Arrays.copyOf(this.colors, this.colors.length*2);
+        }
+        final int k = this.count*4;
+        this.segments[k]   = x0*this.scaleX;
+        this.segments[k+1] = y0*this.scaleY;
+        this.segments[k+2] = x1*this.scaleX;
+        this.segments[k+3] = y1*this.scaleY;
+        this.colors[this.count++] = color.getRGB() & 0xFFFFFF;
+    }
+    
+    /**
+     * Rasterizes the background and the recorded segments into the frame, in parallel bands
+     * if <code>parallel</code> is set
+     *
+     * @param parallel true to rasterize the bands in parallel, false to rasterize them in turn
+     * @return the finished frame, which is reused by the next frame
+     */
+    BufferedImage render(final boolean parallel) {
+        final int bands = (this.height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if(parallel && bands > 1) {
+            ForkJoinPool.commonPool().invoke(new BandTask(0, bands));
+        }else {
+            for(int band = 0; band < bands; band++) {
+                this.renderBand(band*BAND_HEIGHT, Math.min(this.height, (band+1)*BAND_HEIGHT));
+            }
+        }
+        return this.frame;
+    }
+    
+    // ---------------------------------------------------------------------------------
+    
+    /**
+     * Fork/join task that rasterizes a range of bands, splitting it in half until it is a
+     * single band.
+     */
+    private class BandTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int from;
+        private final int to;
+        
+        /**
+         * @param from the index of the first band
+         * @param to the index after the last band
+         */
+        public BandTask(final int from, final int to) {
+            this.from = from;
+            this.to   = to;
+        }
+        
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            if(this.to-this.from == 1) {
+                WuRenderer.this.renderBand(this.from*BAND_HEIGHT, Math.min(WuRenderer.this.height, this.to*BAND_HEIGHT));
+                return;
+            }
+            final int mid = (this.from + this.to) >>> 1;
+            invokeAll(new BandTask(this.from, mid), new BandTask(mid, this.to));
+        }
+    }
+    
+    /**
+     * Copies the background into the rows from <code>top</code> to <code>bottom</code>, then
+     * draws the parts of the segments within those rows
+     */
+    private void renderBand(final int top, final int bottom) {
+        // The background is opaque, so only its alpha has to be set
+        final int[] src = this.background;
+        final int[] dst = this.pixels;
+        for(int i = top*this.width, end = bottom*this.width; i < end; i++) {
+            dst[i] = src[i] | 0xFF000000;
+        }
+        final double[] s = this.segments;
+        for(int k = 0; k < this.count; k++) {
+            final double y0 = s[4*k+1];
+            final double y1 = s[4*k+3];
+            // Skip the segments that don't reach the band, allowing for their antialiased edges
+            if(Math.max(y0, y1) < top - 1 || Math.min(y0, y1) > bottom) continue;
+            this.line(s[4*k], y0, s[4*k+2], y1, this.colors[k], top, bottom);
+        }
+    }
+    
+    /**
+     * Draws an antialiased line with Xiaolin Wu's algorithm, only touching the rows from
+     * <code>top</code> to <code>bottom</code>. Each step along the major axis covers the two
+     * pixels straddling the line, in proportion to how close the line passes to each.
+     */
+    private void line(double x0, double y0, double x1, double y1, final int rgb, final int top, final int bottom) {
+        final boolean steep = Math.abs(y1 - y0) > Math.abs(x1 - x0);
+        double t;
+        // Walk along the major axis, which is y if the line is steep
+        if(steep) {
+            t = x0; x0 = y0; y0 = t;
+            t = x1; x1 = y1; y1 = t;
+        }
+        if(x0 > x1) {
+            t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+        }
+        final double dx       = x1 - x0;
+        final double gradient = dx == 0 ? 1 : (y1 - y0) / dx;
+        
+        // The first endpoint
+        double xend  = Math.rint(x0);
+        double yend  = y0 + gradient * (xend - x0);
+        double xgap  = 1 - fpart(x0 + 0.5);
+        final int xpxl1 = (int) xend;
+        final int ypxl1 = (int) Math.floor(yend);
+        this.plot(steep, xpxl1, ypxl1,     (1 - fpart(yend)) * xgap, rgb, top, bottom);
+        this.plot(steep, xpxl1, ypxl1 + 1, fpart(yend) * xgap,       rgb, top, bottom);
+        final double intery = yend + gradient;
+        
+        // The second endpoint
+        xend = Math.rint(x1);
+        yend = y1 + gradient * (xend - x1);
+        xgap = fpart(x1 + 0.5);
+        final int xpxl2 = (int) xend;
+        final int ypxl2 = (int) Math.floor(yend);
+        this.plot(steep, xpxl2, ypxl2,     (1 - fpart(yend)) * xgap, rgb, top, bottom);
+        this.plot(steep, xpxl2, ypxl2 + 1, fpart(yend) * xgap,       rgb, top, bottom);
+        
+        // The main loop; a steep line only walks the rows of the band
+        int from = xpxl1 + 1;
+        int to   = xpxl2 - 1;
+        if(steep) {
+            from = Math.max(from, top);
+            to   = Math.min(to, bottom - 1);
+        }
+        for(int x = from; x <= to; x++) {
+            final double y = intery + gradient * (x - xpxl1 - 1);
+            final int    iy = (int) Math.floor(y);
+            final double f  = y - iy;
+            this.plot(steep, x, iy,     1 - f, rgb, top, bottom);
+            this.plot(steep, x, iy + 1, f,     rgb, top, bottom);
+        }
+    }
+    
+    /**
+     * Blends a color over the pixel at (x, y), or at (y, x) if <code>steep</code> is set, with a
+     * coverage between 0 and 1. Pixels outside the image or the band are left alone.
+     */
+    private void plot(final boolean steep, final int a, final int b, final double coverage, final int rgb, final int top, final int bottom) {
+        final int x = steep ? b : a;
+        final int y = steep ? a : b;
+        if(y < top || y >= bottom || x < 0 || x >= this.width) return;
+        final int alpha = (int) (coverage * 255 + 0.5);
+        if(alpha <= 0) return;
+        final int i   = y * this.width + x;
+        final int d   = this.pixels[i];
+        final int inv = 255 - alpha;
+        // Source over, with the color premultiplied by its coverage
+        final int r = (((rgb >>> 16) & 0xFF) * alpha + ((d >>> 16) & 0xFF) * inv + 127) / 255;
+        final int g = (((rgb >>>  8) & 0xFF) * alpha + ((d >>>  8) & 0xFF) * inv + 127) / 255;
+        final int bl = ((rgb & 0xFF) * alpha + (d & 0xFF) * inv + 127) / 255;
+        final int al = alpha + ((d >>> 24) * inv + 127) / 255;
+        this.pixels[i] = al << 24 | r << 16 | g << 8 | bl;
+    }
+    
+    /**
+     * Returns the fractional part of a value
+     */
+    private static double fpart(final double v) {
+        return v - Math.floor(v);
+    }
+}